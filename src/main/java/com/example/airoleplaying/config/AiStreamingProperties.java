@@ -0,0 +1,34 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * WebSocket AI文本流式推送配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "ai-streaming")
+@Data
+public class AiStreamingProperties {
+
+    /**
+     * 是否以增量方式推送AI回复文本
+     */
+    private boolean enabled = true;
+
+    /**
+     * 合并窗口：窗口内到达的token合并为一帧推送
+     */
+    private Duration coalesceWindow = Duration.ofMillis(40);
+
+    /**
+     * 单帧最多合并的片段数，达到后立即推送
+     */
+    private int maxChunksPerFrame = 64;
+}
@@ -0,0 +1,49 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 录音文件转录配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "asr-transcription")
+@Data
+public class AsrTranscriptionProperties {
+
+    /**
+     * 是否按实时速率发送音频（关闭时全速发送）
+     */
+    private boolean realTimePacing = false;
+
+    /**
+     * 每次发送的字节数
+     */
+    private int chunkBytes = 3200;
+
+    /**
+     * 分段目标时长，超过该时长的录音在静音处切分后并行转录
+     */
+    private Duration segmentDuration = Duration.ofSeconds(20);
+
+    /**
+     * 在目标切分点前后搜索静音的范围
+     */
+    private Duration silenceSearchWindow = Duration.ofSeconds(3);
+
+    /**
+     * 同时转录的分段数上限
+     */
+    private int parallelism = 4;
+
+    /**
+     * 单次转录的截止时间，超时后中断转录
+     */
+    private Duration deadline = Duration.ofSeconds(30);
+}
@@ -0,0 +1,37 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话记忆配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "conversation-memory")
+@Data
+public class ConversationMemoryProperties {
+
+    /**
+     * 单个会话历史的token预算，超出后丢弃最早的消息
+     */
+    private int tokenBudget = 2000;
+
+    /**
+     * 单个会话保留的最大消息数
+     */
+    private int maxMessages = 20;
+
+    /**
+     * 全局最多保留的会话数，超出后按LRU淘汰冷会话
+     */
+    private int maxConversations = 10000;
+
+    /**
+     * 全局会话历史token总量上限，超出后按LRU淘汰冷会话
+     */
+    private long globalTokenLimit = 2_000_000;
+}
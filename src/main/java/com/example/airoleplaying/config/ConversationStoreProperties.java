@@ -0,0 +1,84 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 会话持久化存储配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "conversation-store")
+@Data
+public class ConversationStoreProperties {
+
+    /**
+     * 是否将会话历史持久化到本地磁盘
+     */
+    private boolean enabled = true;
+
+    /**
+     * 日志段文件与索引文件目录
+     */
+    private String path = "data/conversations";
+
+    /**
+     * 单个日志段文件大小上限
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    /**
+     * 初始索引槽位数，负载过高时后台重建并扩容
+     */
+    private int indexSlots = 16384;
+
+    /**
+     * 有效槽位比例超过该值时扩容重建索引
+     */
+    private double indexMaxLoad = 0.75;
+
+    /**
+     * 已删除槽位比例超过该值时重建索引以清除删除标记
+     */
+    private double indexMaxTombstones = 0.25;
+
+    /**
+     * 每个会话在索引中保留的最近消息数
+     */
+    private int indexDepth = 64;
+
+    /**
+     * 组提交的最长等待时间
+     */
+    private Duration flushInterval = Duration.ofMillis(20);
+
+    /**
+     * 单次组提交的最大记录数
+     */
+    private int maxBatch = 256;
+
+    /**
+     * 待写入队列容量，超出后丢弃写入（内存中的会话不受影响）
+     */
+    private int queueCapacity = 100_000;
+
+    /**
+     * 会话与日志段的保留时长
+     */
+    private Duration retention = Duration.ofDays(7);
+
+    /**
+     * 后台压缩与过期清理的执行间隔
+     */
+    private Duration compactionInterval = Duration.ofMinutes(10);
+
+    /**
+     * 日志段中仍被索引引用的记录比例低于该值时进行压缩
+     */
+    private double minLiveRatio = 0.5;
+}
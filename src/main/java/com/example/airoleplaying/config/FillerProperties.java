@@ -0,0 +1,70 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 填充语音（思考提示音）配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "filler")
+@Data
+public class FillerProperties {
+
+    /**
+     * 是否启用填充语音
+     */
+    private boolean enabled = true;
+
+    /**
+     * 默认填充短语
+     */
+    private List<String> phrases = new ArrayList<>(List.of("嗯……", "让我想想", "好的，稍等"));
+
+    /**
+     * 首段语音的目标时延，预计超过该值时才播放填充语音
+     */
+    private Duration firstAudioDeadline = Duration.ofMillis(1500);
+
+    /**
+     * 尚无实测数据时的首段语音时延估计
+     */
+    private Duration initialEstimate = Duration.ofMillis(2000);
+
+    /**
+     * 时延指数滑动平均的权重
+     */
+    private double ewmaWeight = 0.2;
+
+    /**
+     * 按角色覆盖的配置，键为角色ID
+     */
+    private Map<String, CharacterFiller> characters = new HashMap<>();
+
+    /**
+     * 角色级填充语音配置
+     */
+    @Data
+    public static class CharacterFiller {
+
+        /**
+         * 是否为该角色启用填充语音，为空时沿用全局配置
+         */
+        private Boolean enabled;
+
+        /**
+         * 该角色的填充短语，为空时使用默认短语
+         */
+        private List<String> phrases;
+    }
+}
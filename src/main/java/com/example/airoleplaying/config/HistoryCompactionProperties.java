@@ -0,0 +1,42 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 对话历史压缩配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "history-compaction")
+@Data
+public class HistoryCompactionProperties {
+
+    /**
+     * 是否启用历史压缩
+     */
+    private boolean enabled = true;
+
+    /**
+     * 历史消息超过该token数时触发后台压缩
+     */
+    private int triggerTokens = 1200;
+
+    /**
+     * 压缩后保留的最近消息token数，其余折叠进摘要
+     */
+    private int keepRecentTokens = 600;
+
+    /**
+     * 摘要最大字数
+     */
+    private int summaryMaxChars = 300;
+
+    /**
+     * 后台压缩线程数
+     */
+    private int workerThreads = 2;
+}
@@ -0,0 +1,44 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * LLM回复缓存配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "llm-cache")
+@Data
+public class LlmCacheProperties {
+
+    /**
+     * 是否启用LLM回复缓存（默认关闭，需显式开启）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 缓存条目存活时间
+     */
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /**
+     * 最大缓存条目数，超出后按LRU淘汰
+     */
+    private int maxEntries = 1000;
+
+    /**
+     * 可缓存的最大回复长度（字符数）
+     */
+    private int maxResponseChars = 4000;
+
+    /**
+     * 流式回放时每个分片的字符数
+     */
+    private int replayChunkChars = 8;
+}
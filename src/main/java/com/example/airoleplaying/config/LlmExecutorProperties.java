@@ -0,0 +1,41 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LLM调用线程池配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "llm-executor")
+@Data
+public class LlmExecutorProperties {
+
+    /**
+     * 线程数，即同时进行的LLM调用上限
+     */
+    private int threads = 32;
+
+    /**
+     * 等待队列容量，队列满时拒绝新请求
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 默认超时时间
+     */
+    private Duration defaultTimeout = Duration.ofSeconds(60);
+
+    /**
+     * 各接口的超时时间，未配置的接口使用默认值
+     */
+    private Map<String, Duration> timeouts = new HashMap<>();
+}
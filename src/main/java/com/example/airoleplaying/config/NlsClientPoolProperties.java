@@ -0,0 +1,38 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 阿里云语音服务客户端池配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "nls-client-pool")
+@Data
+public class NlsClientPoolProperties {
+
+    /**
+     * 客户端（分片）数量，每个客户端有独立的网络I/O线程
+     */
+    private int size = 4;
+
+    /**
+     * 分片选择策略
+     */
+    private Selection selection = Selection.LEAST_LOADED;
+
+    public enum Selection {
+        /**
+         * 选择当前连接数最少的分片
+         */
+        LEAST_LOADED,
+        /**
+         * 按会话ID哈希固定到同一分片，未提供会话ID时退化为最少连接
+         */
+        HASH
+    }
+}
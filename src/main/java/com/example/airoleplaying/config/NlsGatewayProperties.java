@@ -0,0 +1,56 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 阿里云语音服务网关选择配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "nls-gateway")
+@Data
+public class NlsGatewayProperties {
+
+    /**
+     * 候选网关地址（ws:// 或 wss://），为空时使用 alibaba.cloud.asr.url 和 alibaba.cloud.tts.url
+     */
+    private List<String> endpoints = new ArrayList<>();
+
+    /**
+     * 探测间隔
+     */
+    private Duration probeInterval = Duration.ofSeconds(30);
+
+    /**
+     * 单次探测（TCP连接与TLS握手）超时
+     */
+    private Duration probeTimeout = Duration.ofSeconds(3);
+
+    /**
+     * 时延与错误率的指数加权平均权重
+     */
+    private double ewmaWeight = 0.3;
+
+    /**
+     * 错误率超过该值的网关视为不可用
+     */
+    private double maxErrorRate = 0.5;
+
+    /**
+     * 候选网关的时延需低于当前网关的比例才考虑切换
+     */
+    private double switchMargin = 0.2;
+
+    /**
+     * 候选网关需连续多少次探测更优才切换
+     */
+    private int switchAfter = 3;
+}
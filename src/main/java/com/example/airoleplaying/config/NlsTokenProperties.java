@@ -0,0 +1,39 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 阿里云语音服务访问令牌刷新配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "nls-token")
+@Data
+public class NlsTokenProperties {
+
+    /**
+     * 在令牌过期前多久开始刷新
+     */
+    private Duration refreshAhead = Duration.ofHours(1);
+
+    /**
+     * 刷新时间的随机抖动上限，避免多个节点同时刷新
+     */
+    private Duration jitter = Duration.ofMinutes(10);
+
+    /**
+     * 刷新失败后的重试间隔
+     */
+    private Duration retryInterval = Duration.ofSeconds(30);
+
+    /**
+     * 切换后旧客户端的最长保留时长，期间已建立的识别和合成连接继续在旧客户端上完成，全部释放后提前关闭
+     */
+    private Duration drainTimeout = Duration.ofMinutes(10);
+}
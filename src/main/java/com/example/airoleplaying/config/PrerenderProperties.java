@@ -0,0 +1,39 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 技能与问候语音预渲染配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "prerender")
+@Data
+public class PrerenderProperties {
+
+    /**
+     * 是否在启动时预渲染技能回复和问候语音
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预渲染并行度（同时进行的合成任务数）
+     */
+    private int parallelism = 4;
+
+    /**
+     * 单个合成任务的超时时间
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+
+    /**
+     * 新会话开始时是否推送角色问候语音
+     */
+    private boolean greetingOnSessionStart = true;
+}
@@ -0,0 +1,29 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 请求合并配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "request-coalescing")
+@Data
+public class RequestCoalescingProperties {
+
+    /**
+     * 是否合并相同的并发上游请求（LLM、TTS）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 合并的同步请求等待首个请求结果的最长时间，应不短于上游调用的超时
+     */
+    private Duration waitTimeout = Duration.ofSeconds(120);
+}
@@ -0,0 +1,44 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 推测式LLM生成配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "speculative-llm")
+@Data
+public class SpeculativeLlmProperties {
+
+    /**
+     * 是否启用推测式生成（推测失败的调用会额外消耗token）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 中间识别结果保持不变多久后开始推测
+     */
+    private Duration stableWindow = Duration.ofMillis(600);
+
+    /**
+     * 开始推测所需的最少字符数（规范化后）
+     */
+    private int minChars = 4;
+
+    /**
+     * 本节点同时进行的推测调用上限
+     */
+    private int maxConcurrent = 8;
+
+    /**
+     * 本节点每分钟推测调用上限
+     */
+    private int maxPerMinute = 120;
+}
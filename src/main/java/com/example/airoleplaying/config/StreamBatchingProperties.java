@@ -0,0 +1,34 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 流式接口token合并刷新配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "stream-batching")
+@Data
+public class StreamBatchingProperties {
+
+    /**
+     * 是否合并流式接口的token后再写出
+     */
+    private boolean enabled = true;
+
+    /**
+     * 最长刷新间隔：缓冲区有内容时最迟在该时间后写出
+     */
+    private Duration flushInterval = Duration.ofMillis(50);
+
+    /**
+     * 缓冲字符数达到该值时立即写出
+     */
+    private int maxChars = 64;
+}
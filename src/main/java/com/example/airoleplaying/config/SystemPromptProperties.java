@@ -0,0 +1,22 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 角色系统提示词配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "system-prompt")
+@Data
+public class SystemPromptProperties {
+
+    /**
+     * 角色系统提示词的token预算，超出时按优先级从低到高舍弃段落（性格描述始终保留）
+     */
+    private int tokenBudget = 800;
+}
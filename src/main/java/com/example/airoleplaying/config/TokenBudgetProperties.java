@@ -0,0 +1,47 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token预算配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "token-budget")
+@Data
+public class TokenBudgetProperties {
+
+    /**
+     * 文本渠道单次回复的最大token数
+     */
+    private int textMaxTokens = 2000;
+
+    /**
+     * 语音渠道单次回复的最大token数，语音回复需简短
+     */
+    private int voiceMaxTokens = 300;
+
+    /**
+     * 估算器校验语料（每行一条样本，#开头为注释）
+     */
+    private String corpus = "classpath:token-corpus.txt";
+
+    /**
+     * 语料各样本的参考token数（模型分词器的计数，与语料一同提交）
+     */
+    private String reference = "classpath:token-corpus-reference.tsv";
+
+    /**
+     * 是否在启动时用语料校验估算误差（只读取参考文件，不调用模型）
+     */
+    private boolean validateOnStartup = false;
+
+    /**
+     * 可接受的平均相对误差，超出时告警
+     */
+    private double errorBound = 0.25;
+}
@@ -0,0 +1,59 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * TTS音频缓存配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "tts-cache")
+@Data
+public class TtsCacheProperties {
+
+    /**
+     * 是否启用TTS音频缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 内存层（堆外）最大容量，单位字节
+     */
+    private long memoryMaxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 内存层淘汰策略：LRU 或 LFU
+     */
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+    /**
+     * 是否启用磁盘层
+     */
+    private boolean diskEnabled = true;
+
+    /**
+     * 磁盘层目录
+     */
+    private String diskPath = "data/tts-cache";
+
+    /**
+     * 单个磁盘段文件大小，单位字节
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    /**
+     * 磁盘层最大容量，超出后删除最旧的段文件
+     */
+    private long diskMaxBytes = 1024L * 1024 * 1024;
+
+    /**
+     * 内存层淘汰策略
+     */
+    public enum EvictionPolicy {
+        LRU, LFU
+    }
+}
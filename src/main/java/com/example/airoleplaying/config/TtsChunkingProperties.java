@@ -0,0 +1,37 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 长文本分段合成配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "tts-chunking")
+@Data
+public class TtsChunkingProperties {
+
+    /**
+     * 是否对长文本分段并行合成
+     */
+    private boolean enabled = true;
+
+    /**
+     * 超过该字符数的文本才分段
+     */
+    private int minChars = 100;
+
+    /**
+     * 单段最大字符数，句子过长时在分句标点处切分
+     */
+    private int maxSegmentChars = 60;
+
+    /**
+     * 单个请求同时合成的分段数上限
+     */
+    private int parallelism = 3;
+}
@@ -0,0 +1,27 @@
+package com.example.airoleplaying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按发音人划分的语音合成队列配置属性类
+ *
+ * @author AI Assistant
+ * @since 1.0.0
+ */
+@Component
+@ConfigurationProperties(prefix = "tts-voice")
+@Data
+public class TtsVoiceProperties {
+
+    /**
+     * 每个发音人同时进行的合成数上限
+     */
+    private int concurrencyPerVoice = 4;
+
+    /**
+     * 每个发音人的等待队列容量，队列满时拒绝新的合成请求
+     */
+    private int queueCapacity = 100;
+}
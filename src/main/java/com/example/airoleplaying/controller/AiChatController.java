@@ -18,15 +18,17 @@
 package com.example.airoleplaying.controller;
 
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
-import com.example.airoleplaying.model.CharacterProfile;
-import com.example.airoleplaying.service.CharacterService;
+import com.example.airoleplaying.service.LlmExecutor;
+import com.example.airoleplaying.service.ResponseChannel;
+import com.example.airoleplaying.service.RolePlayChatService;
+import com.example.airoleplaying.service.TokenBatcher;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import reactor.core.publisher.Flux;
 
-import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -34,55 +36,68 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/chat")
 @RequiredArgsConstructor
 public class AiChatController {
 
-    private final ChatClient dashScopeChatClient;
-    private final CharacterService characterService;
+    private final RolePlayChatService rolePlayChatService;
+    private final TokenBatcher tokenBatcher;
+    private final LlmExecutor llmExecutor;
 
     /**
      * ChatClient 简单调用
      */
     @GetMapping("/simple/chat")
-    public String simpleChat(@RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query) {
-        return dashScopeChatClient.prompt(query).call().content();
+    public CompletableFuture<String> simpleChat(
+            @RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
+        String resolvedConversationId = ConversationIdResolver.resolve(request, conversationId);
+        return llmExecutor.submit("simple-chat",
+                () -> rolePlayChatService.call(null, resolvedConversationId, query));
     }
 
     /**
      * 角色扮演简单对话
      * @param characterId 角色ID，如：default, anime-girl, professional, gentle-lady, energetic-boy
      * @param query 用户问题
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @return AI回复
      */
     @GetMapping("/roleplay/simple/chat")
-    public String roleplaySimpleChat(
+    public CompletableFuture<String> roleplaySimpleChat(
             @RequestParam(value = "character", defaultValue = "default") String characterId,
-            @RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query) {
+            @RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
         
-        CharacterProfile character = characterService.getCharacterProfile(characterId);
-        return dashScopeChatClient
-                .prompt()
-                .system(character.getPersonality())
-                .user(query)
-                .call()
-                .content();
+        String resolvedConversationId = ConversationIdResolver.resolve(request, conversationId);
+        return llmExecutor.submit("roleplay-chat",
+                () -> rolePlayChatService.call(characterId, resolvedConversationId, query));
     }
 
     /**
      * ChatClient 流式调用
      */
     @GetMapping("/stream/chat")
-    public Flux<String> streamChat(@RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query, HttpServletResponse response) {
+    public Flux<String> streamChat(
+            @RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         response.setCharacterEncoding("UTF-8");
-        return dashScopeChatClient.prompt(query).stream().content();
+        return tokenBatcher.batch(
+                rolePlayChatService.stream(null, ConversationIdResolver.resolve(request, conversationId), query));
     }
 
     /**
      * 角色扮演流式对话
      * @param characterId 角色ID，如：default, anime-girl, professional, gentle-lady, energetic-boy
      * @param query 用户问题
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @param response HTTP响应
      * @return AI回复流
      */
@@ -90,46 +105,43 @@ public class AiChatController {
     public Flux<String> roleplayStreamChat(
             @RequestParam(value = "character", defaultValue = "default") String characterId,
             @RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query, 
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request,
             HttpServletResponse response) {
         
         response.setCharacterEncoding("UTF-8");
-        CharacterProfile character = characterService.getCharacterProfile(characterId);
-        return dashScopeChatClient
-                .prompt()
-                .system(character.getPersonality())
-                .user(query)
-                .stream()
-                .content();
+        return tokenBatcher.batch(
+                rolePlayChatService.stream(characterId, ConversationIdResolver.resolve(request, conversationId), query));
     }
 
     /**
      * 语音聊天接口 - 处理语音转录后的文本并返回AI回复
      * @param characterId 角色ID
      * @param message 用户消息（从语音转录获得）
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @return AI回复
      */
     @GetMapping("/voice/chat")
-    public String voiceChat(
+    public CompletableFuture<String> voiceChat(
             @RequestParam(value = "character", defaultValue = "default") String characterId,
-            @RequestParam(value = "message") String message) {
+            @RequestParam(value = "message") String message,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
         
         if (message == null || message.trim().isEmpty()) {
-            return "抱歉，我没有听到您说什么，请再说一遍。";
+            return CompletableFuture.completedFuture("抱歉，我没有听到您说什么，请再说一遍。");
         }
         
-        CharacterProfile character = characterService.getCharacterProfile(characterId);
-        return dashScopeChatClient
-                .prompt()
-                .system(character.getPersonality())
-                .user(message.trim())
-                .call()
-                .content();
+        String resolvedConversationId = ConversationIdResolver.resolve(request, conversationId);
+        return llmExecutor.submit("voice-chat", () -> rolePlayChatService.call(characterId, resolvedConversationId,
+                message.trim(), ResponseChannel.VOICE));
     }
 
     /**
      * 语音聊天流式接口 - 处理语音转录后的文本并返回AI回复流
      * @param characterId 角色ID
      * @param message 用户消息（从语音转录获得）
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @param response HTTP响应
      * @return AI回复流
      */
@@ -137,6 +149,8 @@ public class AiChatController {
     public Flux<String> voiceStreamChat(
             @RequestParam(value = "character", defaultValue = "default") String characterId,
             @RequestParam(value = "message") String message,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request,
             HttpServletResponse response) {
         
         response.setCharacterEncoding("UTF-8");
@@ -145,12 +159,7 @@ public class AiChatController {
             return Flux.just("抱歉，我没有听到您说什么，请再说一遍。");
         }
         
-        CharacterProfile character = characterService.getCharacterProfile(characterId);
-        return dashScopeChatClient
-                .prompt()
-                .system(character.getPersonality())
-                .user(message.trim())
-                .stream()
-                .content();
+        return tokenBatcher.batch(rolePlayChatService.stream(characterId,
+                ConversationIdResolver.resolve(request, conversationId), message.trim(), ResponseChannel.VOICE));
     }
 }
@@ -0,0 +1,27 @@
+package com.example.airoleplaying.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * REST请求的会话ID解析
+ * 优先级：请求参数 conversationId > 请求头 X-Client-Id > 已有的HTTP会话ID；均无时返回null（无状态请求）
+ */
+final class ConversationIdResolver {
+    static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private ConversationIdResolver() {
+    }
+
+    static String resolve(HttpServletRequest request, String conversationId) {
+        if (conversationId != null && !conversationId.isBlank()) {
+            return conversationId.trim();
+        }
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        if (clientId != null && !clientId.isBlank()) {
+            return clientId.trim();
+        }
+        HttpSession session = request.getSession(false);
+        return session != null ? session.getId() : null;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.airoleplaying.controller;
+
+import com.example.airoleplaying.service.BoundedConversationMemory;
+import com.example.airoleplaying.service.ConversationLogStore;
+import com.example.airoleplaying.service.FillerAudioService;
+import com.example.airoleplaying.service.HistoryCompactionAdvisor;
+import com.example.airoleplaying.service.LlmExecutor;
+import com.example.airoleplaying.service.LlmResponseCache;
+import com.example.airoleplaying.service.NlsClientManager;
+import com.example.airoleplaying.service.NlsGatewaySelector;
+import com.example.airoleplaying.service.PrerenderedAudioService;
+import com.example.airoleplaying.service.RequestCoalescer;
+import com.example.airoleplaying.service.SpeculativeResponseService;
+import com.example.airoleplaying.service.SpeechAiService;
+import com.example.airoleplaying.service.SystemPromptCompiler;
+import com.example.airoleplaying.service.TokenBatcher;
+import com.example.airoleplaying.service.TokenEstimator;
+import com.example.airoleplaying.service.TtsAudioCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 运行指标控制器
+ * 暴露缓存命中率等性能相关统计
+ */
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+@Slf4j
+public class MetricsController {
+    private final TtsAudioCache ttsAudioCache;
+    private final LlmResponseCache llmResponseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final PrerenderedAudioService prerenderedAudioService;
+    private final FillerAudioService fillerAudioService;
+    private final BoundedConversationMemory conversationMemory;
+    private final ConversationLogStore conversationLogStore;
+    private final HistoryCompactionAdvisor historyCompactionAdvisor;
+    private final TokenEstimator tokenEstimator;
+    private final SystemPromptCompiler systemPromptCompiler;
+    private final TokenBatcher tokenBatcher;
+    private final LlmExecutor llmExecutor;
+    private final SpeculativeResponseService speculativeResponseService;
+    private final SpeechAiService speechAiService;
+    private final NlsClientManager nlsClientManager;
+    private final NlsGatewaySelector nlsGatewaySelector;
+
+    /**
+     * TTS音频缓存统计
+     */
+    @GetMapping("/tts-cache")
+    public Map<String, Object> ttsCacheStatistics() {
+        return createSuccessResponse(ttsAudioCache.getStatistics());
+    }
+
+    /**
+     * 清空TTS音频缓存
+     */
+    @DeleteMapping("/tts-cache")
+    public Map<String, Object> clearTtsCache() {
+        ttsAudioCache.clear();
+        log.info("TTS音频缓存已清空");
+        return createSuccessResponse(ttsAudioCache.getStatistics());
+    }
+
+    /**
+     * LLM回复缓存统计
+     */
+    @GetMapping("/llm-cache")
+    public Map<String, Object> llmCacheStatistics() {
+        return createSuccessResponse(llmResponseCache.getStatistics());
+    }
+
+    /**
+     * 清空LLM回复缓存
+     */
+    @DeleteMapping("/llm-cache")
+    public Map<String, Object> clearLlmCache() {
+        llmResponseCache.clear();
+        log.info("LLM回复缓存已清空");
+        return createSuccessResponse(llmResponseCache.getStatistics());
+    }
+
+    /**
+     * 请求合并统计：节省的上游调用次数等
+     */
+    @GetMapping("/coalescing")
+    public Map<String, Object> coalescingStatistics() {
+        return createSuccessResponse(requestCoalescer.getStatistics());
+    }
+
+    /**
+     * 技能与问候语音预渲染统计
+     */
+    @GetMapping("/prerender")
+    public Map<String, Object> prerenderStatistics() {
+        return createSuccessResponse(prerenderedAudioService.getStatistics());
+    }
+
+    /**
+     * 填充语音统计：感知时延与实际时延
+     */
+    @GetMapping("/filler")
+    public Map<String, Object> fillerStatistics() {
+        return createSuccessResponse(fillerAudioService.getStatistics());
+    }
+
+    /**
+     * 会话记忆统计
+     */
+    @GetMapping("/conversation-memory")
+    public Map<String, Object> conversationMemoryStatistics() {
+        return createSuccessResponse(conversationMemory.getStatistics());
+    }
+
+    /**
+     * 会话日志存储统计：组提交批量、压缩与过期清理
+     */
+    @GetMapping("/conversation-store")
+    public Map<String, Object> conversationStoreStatistics() {
+        return createSuccessResponse(conversationLogStore.getStatistics());
+    }
+
+    /**
+     * 对话历史压缩统计
+     */
+    @GetMapping("/history-compaction")
+    public Map<String, Object> historyCompactionStatistics() {
+        return createSuccessResponse(historyCompactionAdvisor.getStatistics());
+    }
+
+    /**
+     * 角色系统提示词编译统计
+     */
+    @GetMapping("/system-prompt")
+    public Map<String, Object> systemPromptStatistics() {
+        return createSuccessResponse(systemPromptCompiler.getStatistics());
+    }
+
+    /**
+     * Token用量与估算误差统计
+     */
+    @GetMapping("/tokens")
+    public Map<String, Object> tokenStatistics() {
+        return createSuccessResponse(tokenEstimator.getStatistics());
+    }
+
+    /**
+     * 用样本语料校验Token估算误差
+     */
+    @PostMapping("/tokens/validate")
+    public Map<String, Object> validateTokenEstimator() {
+        return createSuccessResponse(tokenEstimator.validateCorpus());
+    }
+
+    /**
+     * 流式接口token合并统计：写出次数的缩减
+     */
+    @GetMapping("/stream-batching")
+    public Map<String, Object> streamBatchingStatistics() {
+        return createSuccessResponse(tokenBatcher.getStatistics());
+    }
+
+    /**
+     * LLM调用线程池统计：排队、拒绝与超时
+     */
+    @GetMapping("/llm-executor")
+    public Map<String, Object> llmExecutorStatistics() {
+        return createSuccessResponse(llmExecutor.getStatistics());
+    }
+
+    /**
+     * 推测式LLM生成统计：命中率与节省的时延
+     */
+    @GetMapping("/speculative-llm")
+    public Map<String, Object> speculativeLlmStatistics() {
+        return createSuccessResponse(speculativeResponseService.getStatistics());
+    }
+
+    /**
+     * 各发音人合成队列统计：并发、排队与拒绝
+     */
+    @GetMapping("/tts-voices")
+    public Map<String, Object> ttsVoiceStatistics() {
+        return createSuccessResponse(speechAiService.getVoiceStatistics());
+    }
+
+    /**
+     * 语音服务客户端统计：各分片连接数与建连时延、令牌刷新状态
+     */
+    @GetMapping("/nls-client")
+    public Map<String, Object> nlsClientStatistics() {
+        return createSuccessResponse(nlsClientManager.getStatistics());
+    }
+
+    /**
+     * 语音服务网关探测统计：各网关时延、错误率与当前选择
+     */
+    @GetMapping("/nls-gateway")
+    public Map<String, Object> nlsGatewayStatistics() {
+        return createSuccessResponse(nlsGatewaySelector.getStatistics());
+    }
+
+    /**
+     * 创建成功响应
+     */
+    private Map<String, Object> createSuccessResponse(Map<String, Object> statistics) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("statistics", statistics);
+        response.put("timestamp", System.currentTimeMillis());
+        return response;
+    }
+}
@@ -1,12 +1,15 @@
 package com.example.airoleplaying.controller;
 
 import com.example.airoleplaying.service.SpeechAiService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 
 @RestController
@@ -28,6 +31,19 @@ public class SpeechTranscriberController {
                 .exceptionally(e -> ResponseEntity.badRequest().body(e.getMessage()));
     }
 
+    /**
+     * 流式语音转录接口：请求体为原始音频（PCM或WAV，支持分块传输），边上传边识别
+     * @param request HTTP请求
+     * @return 转录结果
+     */
+    @PostMapping(value = "/transcribe/stream",
+            consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "audio/*"})
+    public CompletableFuture<ResponseEntity<String>> transcribeStream(HttpServletRequest request) throws IOException {
+        return speechAiService.speechToText(request.getInputStream())
+                .thenApply(text -> ResponseEntity.ok().body(text))
+                .exceptionally(e -> ResponseEntity.badRequest().body(e.getMessage()));
+    }
+
     /**
      * 健康检查接口
      */
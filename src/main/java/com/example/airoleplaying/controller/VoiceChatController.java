@@ -1,19 +1,41 @@
 package com.example.airoleplaying.controller;
 
 import com.example.airoleplaying.model.CharacterProfile;
+import com.example.airoleplaying.service.AudioInput;
 import com.example.airoleplaying.service.CharacterService;
+import com.example.airoleplaying.service.LlmExecutor;
+import com.example.airoleplaying.service.ResponseChannel;
+import com.example.airoleplaying.service.RolePlayChatService;
 import com.example.airoleplaying.service.SpeechAiService;
+import com.example.airoleplaying.service.VoicePipelineService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 语音聊天控制器
@@ -24,26 +46,36 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 @Slf4j
 public class VoiceChatController {
+    private static final MediaType AUDIO_WAV = MediaType.parseMediaType("audio/wav");
+    // 合成结果由文本和合成参数唯一确定，可长期缓存
+    private static final CacheControl TTS_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(1)).cachePublic();
+
     private final SpeechAiService speechAiService;
     private final CharacterService characterService;
-    private final ChatClient dashScopeChatClient;
+    private final RolePlayChatService rolePlayChatService;
+    private final LlmExecutor llmExecutor;
+    private final VoicePipelineService voicePipelineService;
 
     /**
      * 完整的语音聊天流程：录音 -> 转录 -> AI对话 -> 语音合成
      * @param file 录音文件
      * @param characterId 角色ID
      * @param synthesizeAudio 是否合成语音回复
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @return 包含转录文本、AI回复和音频数据的结果
      */
     @PostMapping("/process")
     public CompletableFuture<Map<String, Object>> processVoiceChat(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "character", defaultValue = "default") String characterId,
-            @RequestParam(value = "synthesizeAudio", defaultValue = "false") boolean synthesizeAudio) {
+            @RequestParam(value = "synthesizeAudio", defaultValue = "false") boolean synthesizeAudio,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
         log.info("开始处理语音聊天请求，角色: {}", characterId);
         if (file.isEmpty()) {
             return CompletableFuture.completedFuture(createErrorResponse("录音文件为空"));
         }
+        String resolvedConversationId = ConversationIdResolver.resolve(request, conversationId);
         // 先转文本
         return speechAiService.speechToText(file)
                 .thenCompose(transcribedText -> {
@@ -51,15 +83,11 @@ public class VoiceChatController {
                         return CompletableFuture.completedFuture(createErrorResponse("未能识别到有效语音内容"));
                     }
                     CharacterProfile character = characterService.getCharacterProfile(characterId);
-                    // AI回复
-                    return CompletableFuture.supplyAsync(() -> {
+                    // AI回复，在LLM专用线程池中执行
+                    return llmExecutor.submit("voice-chat-process", () -> {
                         try {
-                            String aiResponse = dashScopeChatClient
-                                    .prompt()
-                                    .system(character.getPersonality())
-                                    .user(transcribedText.trim())
-                                    .call()
-                                    .content();
+                            String aiResponse = rolePlayChatService.call(
+                                    characterId, resolvedConversationId, transcribedText.trim(), ResponseChannel.VOICE);
                             Map<String, Object> result = new HashMap<>();
                             result.put("success", true);
                             result.put("transcribedText", transcribedText);
@@ -76,7 +104,7 @@ public class VoiceChatController {
                             return CompletableFuture.completedFuture(aiResult);
                         }
                         String aiResponse = (String) aiResult.get("aiResponse");
-                        return speechAiService.textToSpeech(aiResponse)
+                        return speechAiService.textToSpeech(aiResponse, character.getVoice())
                                 .thenApply(audioBytes -> {
                                     aiResult.put("audioData", Base64.getEncoder().encodeToString(audioBytes));
                                     aiResult.put("hasAudio", true);
@@ -91,10 +119,39 @@ public class VoiceChatController {
                 })
                 .exceptionally(throwable -> {
                     log.error("语音聊天处理异常: {}", throwable.getMessage(), throwable);
-                    return createErrorResponse("处理失败: " + throwable.getMessage());
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    return createErrorResponse("处理失败: " + describe(cause));
                 });
     }
 
+    /**
+     * 渐进式语音聊天流程：以SSE逐阶段推送转录文本、AI回复增量和按句合成的语音片段
+     * 事件：transcript、ai_delta、ai_complete、audio、audio_error、done、error，均携带 stageMs 和 elapsedMs
+     * @param file 录音文件
+     * @param characterId 角色ID
+     * @param synthesizeAudio 是否合成语音回复
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
+     * @return SSE事件流
+     */
+    @PostMapping(value = "/process/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> processVoiceChatStream(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "character", defaultValue = "default") String characterId,
+            @RequestParam(value = "synthesizeAudio", defaultValue = "false") boolean synthesizeAudio,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
+        log.info("开始处理流式语音聊天请求，角色: {}", characterId);
+        if (file.isEmpty()) {
+            return Flux.just(ServerSentEvent.<Map<String, Object>>builder()
+                    .event("error")
+                    .data(createErrorResponse("录音文件为空"))
+                    .build());
+        }
+        return voicePipelineService.process(file, characterId,
+                ConversationIdResolver.resolve(request, conversationId), synthesizeAudio);
+    }
+
     /**
      * 仅进行语音转录
      * @param file 录音文件
@@ -120,56 +177,272 @@ public class VoiceChatController {
                 });
     }
 
+    /**
+     * 流式语音转录：请求体为原始音频（PCM或WAV，支持分块传输），边上传边识别
+     * @param request HTTP请求
+     * @return 转录结果
+     */
+    @PostMapping(value = "/transcribe/stream",
+            consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "audio/*"})
+    public CompletableFuture<Map<String, Object>> transcribeVoiceStream(HttpServletRequest request) {
+        log.info("开始流式语音转录");
+        CompletableFuture<String> transcription;
+        try {
+            transcription = speechAiService.speechToText(request.getInputStream());
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(createErrorResponse("读取上传数据失败: " + e.getMessage()));
+        }
+        return transcription
+                .thenApply(text -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("text", text);
+                    response.put("timestamp", System.currentTimeMillis());
+                    return response;
+                })
+                .exceptionally(throwable -> {
+                    log.error("流式语音转录异常: {}", throwable.getMessage(), throwable);
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    return createErrorResponse("转录异常: " + describe(cause));
+                });
+    }
+
     /**
      * 仅进行AI对话（基于文本）
      * @param message 用户消息
      * @param characterId 角色ID
+     * @param conversationId 会话ID（可选），也可通过 X-Client-Id 请求头传入
      * @return AI回复
      */
     @PostMapping("/chat")
-    public Map<String, Object> chatWithAi(
+    public CompletableFuture<Map<String, Object>> chatWithAi(
             @RequestParam("message") String message,
-            @RequestParam(value = "character", defaultValue = "default") String characterId) {
+            @RequestParam(value = "character", defaultValue = "default") String characterId,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            HttpServletRequest request) {
         log.info("AI对话请求，角色: {}, 消息: {}", characterId, message);
         if (message == null || message.trim().isEmpty()) {
-            return createErrorResponse("消息内容为空");
+            return CompletableFuture.completedFuture(createErrorResponse("消息内容为空"));
         }
-        try {
-            CharacterProfile character = characterService.getCharacterProfile(characterId);
+        CharacterProfile character = characterService.getCharacterProfile(characterId);
+        String resolvedConversationId = ConversationIdResolver.resolve(request, conversationId);
+        return llmExecutor.submit("voice-chat-text",
+                        () -> rolePlayChatService.call(characterId, resolvedConversationId, message.trim()))
+                .thenApply(aiResponse -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("success", true);
+                    result.put("userMessage", message);
+                    result.put("aiResponse", aiResponse);
+                    result.put("character", character.getName());
+                    result.put("timestamp", System.currentTimeMillis());
 
-            String aiResponse = dashScopeChatClient
-                    .prompt()
-                    .system(character.getPersonality())
-                    .user(message.trim())
-                    .call()
-                    .content();
+                    log.info("AI对话成功");
+                    return result;
+                })
+                .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    log.error("AI对话失败: {}", cause.getMessage(), cause);
+                    return createErrorResponse("AI对话失败: " + describe(cause));
+                });
+    }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", true);
-            result.put("userMessage", message);
-            result.put("aiResponse", aiResponse);
-            result.put("character", character.getName());
-            result.put("timestamp", System.currentTimeMillis());
+    /**
+     * 文本转语音合成
+     * 未缓存的音频以分块传输流式输出：长文本分段并行合成，首段完成后即开始输出；
+     * 已缓存的完整音频带长度返回并支持单个字节范围请求。只有已缓存的完整音频携带由合成参数确定的ETag，
+     * 且仅在服务端已缓存该音频时对 If-None-Match 返回304；流式输出的音频可能因后续分段失败而被截断，不允许缓存。
+     * @param text 要合成的文本
+     * @param format 输出格式：wav（默认）或 pcm（16位单声道，无文件头）
+     * @param characterId 角色ID（可选），使用该角色配置的发音人，未指定时使用默认发音人
+     * @param ifNoneMatch 客户端缓存的ETag
+     * @param range 字节范围请求
+     * @return 音频文件响应
+     */
+    @RequestMapping(value = "/tts", method = {RequestMethod.GET, RequestMethod.POST})
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> tts(
+            @RequestParam("text") String text,
+            @RequestParam(value = "format", defaultValue = "wav") String format,
+            @RequestParam(value = "character", required = false) String characterId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        boolean pcm = "pcm".equalsIgnoreCase(format);
+        if (!pcm && !"wav".equalsIgnoreCase(format)) {
+            return CompletableFuture.completedFuture(errorBody(HttpStatus.BAD_REQUEST, "不支持的音频格式: " + format));
+        }
+        String voice = characterId != null ? characterService.getCharacterProfile(characterId).getVoice() : null;
+        byte[] cached = speechAiService.cachedSpeech(text, voice);
+        if (cached != null) {
+            String etag = "\"" + speechAiService.ttsCacheKey(text, voice) + (pcm ? "-pcm" : "") + "\"";
+            if (etagMatches(ifNoneMatch, etag)) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .cacheControl(TTS_CACHE_CONTROL)
+                        .build());
+            }
+            return CompletableFuture.completedFuture(cachedAudioResponse(cached, pcm, etag, range));
+        }
+        List<CompletableFuture<byte[]>> segments = speechAiService.textToSpeechSegments(text, voice);
+        return segments.get(0)
+                .thenApply(first -> {
+                    AudioInput input = AudioInput.sniff(first, first.length);
+                    return ResponseEntity.ok()
+                            .cacheControl(CacheControl.noStore())
+                            .contentType(audioType(input, pcm))
+                            .<StreamingResponseBody>body(out -> writeAudioSegments(segments, out, pcm));
+                })
+                .exceptionally(VoiceChatController::ttsErrorBody);
+    }
 
-            log.info("AI对话成功");
-            return result;
+    /**
+     * 合成失败的响应，状态码与 GlobalExceptionHandler 一致：队列已满 503，超时 504，其余为上游合成失败 502
+     */
+    private static ResponseEntity<StreamingResponseBody> ttsErrorBody(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        if (cause instanceof RejectedExecutionException) {
+            log.warn("语音合成请求被拒绝: {}", cause.getMessage());
+            return errorBody(HttpStatus.SERVICE_UNAVAILABLE, "服务繁忙: " + cause.getMessage());
+        }
+        if (cause instanceof TimeoutException) {
+            log.warn("语音合成超时: {}", cause.getMessage());
+            return errorBody(HttpStatus.GATEWAY_TIMEOUT, describe(cause));
+        }
+        log.error("语音合成失败: {}", cause.getMessage(), cause);
+        return errorBody(HttpStatus.BAD_GATEWAY, "语音合成失败: " + cause.getMessage());
+    }
 
-        } catch (Exception e) {
-            log.error("AI对话失败: {}", e.getMessage(), e);
-            return createErrorResponse("AI对话失败: " + e.getMessage());
+    /**
+     * 已缓存音频的响应：带 Content-Length，支持单个字节范围（多个范围时返回完整内容）
+     */
+    private static ResponseEntity<StreamingResponseBody> cachedAudioResponse(byte[] audio, boolean pcm, String etag,
+                                                                             String range) {
+        AudioInput input = AudioInput.sniff(audio, audio.length);
+        int offset = pcm ? input.dataOffset() : 0;
+        int length = (pcm ? input.dataEnd(audio.length) : audio.length) - offset;
+        HttpStatus status = HttpStatus.OK;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl(TTS_CACHE_CONTROL);
+        headers.setContentType(audioType(input, pcm));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (range != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange httpRange = ranges.get(0);
+                long start;
+                long end;
+                try {
+                    start = httpRange.getRangeStart(length);
+                    end = httpRange.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                    end = length - 1;
+                }
+                if (start >= length || start > end) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                }
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                status = HttpStatus.PARTIAL_CONTENT;
+                offset += (int) start;
+                length = (int) (end - start + 1);
+            }
         }
+        headers.setContentLength(length);
+        int bodyOffset = offset;
+        int bodyLength = length;
+        return new ResponseEntity<>(out -> out.write(audio, bodyOffset, bodyLength), headers, status);
     }
 
     /**
-     * 文本转语音合成
-     * @param text 要合成的文本
-     * @return 音频文件响应
+     * 按顺序写出分段音频：只写一个WAV文件头（pcm格式不写），各段只写音频数据
+     * 全部分段已完成时文件头携带准确长度，否则以未知长度写出
+     * 状态码和文件头已发出后某段合成失败时，记录日志并停止写出，客户端收到截断的音频
+     */
+    private static void writeAudioSegments(List<CompletableFuture<byte[]>> segments, OutputStream out, boolean pcm)
+            throws IOException {
+        if (segments.size() == 1 && !pcm) {
+            out.write(segments.get(0).join());
+            return;
+        }
+        // 全部分段已就绪（如缓存命中）时可以写出准确长度
+        long total = 0;
+        for (CompletableFuture<byte[]> segment : segments) {
+            if (!segment.isDone() || segment.isCompletedExceptionally()) {
+                total = -1;
+                break;
+            }
+            byte[] audio = segment.join();
+            AudioInput input = AudioInput.sniff(audio, audio.length);
+            total += input.dataEnd(audio.length) - input.dataOffset();
+        }
+        boolean headerWritten = pcm;
+        for (int i = 0; i < segments.size(); i++) {
+            byte[] audio;
+            try {
+                audio = segments.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.warn("第 {}/{} 段语音合成失败，停止写出: {}", i + 1, segments.size(), cause.getMessage());
+                return;
+            }
+            AudioInput input = AudioInput.sniff(audio, audio.length);
+            if (!headerWritten) {
+                out.write(AudioInput.wavHeader(input.sampleRate(), input.channels(), total));
+                headerWritten = true;
+            }
+            out.write(audio, input.dataOffset(), input.dataEnd(audio.length) - input.dataOffset());
+            out.flush();
+        }
+    }
+
+    private static MediaType audioType(AudioInput input, boolean pcm) {
+        if (!pcm) {
+            return AUDIO_WAV;
+        }
+        return new MediaType("audio", "pcm", Map.of(
+                "rate", String.valueOf(input.sampleRate()),
+                "channels", String.valueOf(input.channels())));
+    }
+
+    /**
+     * 判断 If-None-Match 是否包含当前ETag（弱比较）
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<StreamingResponseBody> errorBody(HttpStatus status, String message) {
+        byte[] body = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status)
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(out -> out.write(body));
+    }
+
+    /**
+     * 异常描述，超时给出明确提示
      */
-    @PostMapping("/tts")
-    public CompletableFuture<ResponseEntity<byte[]>> tts(@RequestParam("text") String text) {
-        return speechAiService.textToSpeech(text)
-                .thenApply(bytes -> ResponseEntity.ok().body(bytes))
-                .exceptionally(e -> ResponseEntity.badRequest().body(e.getMessage().getBytes()));
+    private static String describe(Throwable throwable) {
+        return throwable instanceof TimeoutException ? "请求超时，请稍后重试" : throwable.getMessage();
     }
 
     /**
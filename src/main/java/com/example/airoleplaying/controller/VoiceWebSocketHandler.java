@@ -7,25 +7,38 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 
 import java.io.IOException;
 import java.util.Base64;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * WebSocket语音流式交互处理器
  * 处理实时语音数据传输和流式响应
+ * 状态、增量文本和音频消息可能由不同线程同时发送，所有发送都经过 ConcurrentWebSocketSessionDecorator 串行化
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class VoiceWebSocketHandler implements WebSocketHandler {
     
+    // 单条消息发送的最长阻塞时间，超出后关闭连接
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    // 等待发送的消息缓冲上限，需容纳整段合成音频
+    private static final int SEND_BUFFER_SIZE_LIMIT = 4 * 1024 * 1024;
+
     private final StreamingVoiceService streamingVoiceService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 连接ID -> 线程安全的发送端会话
+    private final Map<String, WebSocketSession> outboundSessions = new ConcurrentHashMap<>();
+
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+    public void afterConnectionEstablished(WebSocketSession rawSession) throws Exception {
+        WebSocketSession session = outbound(rawSession);
         log.info("WebSocket连接已建立: {}", session.getId());
         
         // 发送欢迎消息
@@ -38,7 +51,8 @@ public class VoiceWebSocketHandler implements WebSocketHandler {
     }
 
     @Override
-    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+    public void handleMessage(WebSocketSession rawSession, WebSocketMessage<?> message) throws Exception {
+        WebSocketSession session = outbound(rawSession);
         if (message instanceof TextMessage) {
             handleTextMessage(session, (TextMessage) message);
         } else if (message instanceof BinaryMessage) {
@@ -234,6 +248,7 @@ public class VoiceWebSocketHandler implements WebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         log.info("WebSocket连接已关闭: {}, 状态: {}", session.getId(), closeStatus);
+        outboundSessions.remove(session.getId());
         
         // 清理会话
         String sessionId = (String) session.getAttributes().get("sessionId");
@@ -400,6 +415,14 @@ public class VoiceWebSocketHandler implements WebSocketHandler {
         }
     }
 
+    /**
+     * 获取连接的发送端会话
+     */
+    private WebSocketSession outbound(WebSocketSession session) {
+        return outboundSessions.computeIfAbsent(session.getId(),
+                id -> new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT));
+    }
+
     /**
      * 发送错误消息
      */
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 /**
  * WebSocket消息模型
  * 用于客户端和服务端之间的消息通信
@@ -16,7 +18,7 @@ public class WebSocketMessageEntity {
     /**
      * 消息类型
      * 客户端发送：audio_chunk, start_session, end_session
-     * 服务端推送：transcription_result, ai_response, audio_synthesis, error, status
+     * 服务端推送：transcription_result, ai_response, audio_synthesis, audio_filler, error, status
      */
     private String type;
     
@@ -85,6 +87,11 @@ public class WebSocketMessageEntity {
      */
     private String skill;
 
+    /**
+     * 用量统计（流式AI回复的最终消息携带）
+     */
+    private Map<String, Object> usage;
+
     /**
      * 创建语音数据消息
      */
@@ -124,6 +131,16 @@ public class WebSocketMessageEntity {
         return message;
     }
 
+    /**
+     * 创建流式AI回复的最终消息：携带完整文本和用量统计
+     */
+    public static WebSocketMessageEntity createAiResponseComplete(String sessionId, String text, Map<String, Object> usage) {
+        WebSocketMessageEntity message = createAiResponse(sessionId, text, false);
+        message.setIsComplete(true);
+        message.setUsage(usage);
+        return message;
+    }
+
     /**
      * 创建语音合成消息
      */
@@ -137,6 +154,19 @@ public class WebSocketMessageEntity {
         return message;
     }
 
+    /**
+     * 创建填充语音消息（用于掩盖AI思考时间的简短应答音）
+     */
+    public static WebSocketMessageEntity createFillerAudio(String sessionId, String audioData) {
+        WebSocketMessageEntity message = new WebSocketMessageEntity();
+        message.setType("audio_filler");
+        message.setData(audioData);
+        message.setSessionId(sessionId);
+        message.setIsComplete(true);
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+
     /**
      * 创建错误消息
      */
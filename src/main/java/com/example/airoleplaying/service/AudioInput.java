@@ -0,0 +1,427 @@
+package com.example.airoleplaying.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 音频输入适配器
+ * 识别上传音频的容器格式：WAV/RIFF 解析 fmt 块获取编码、采样率和声道数，并定位 data 块以跳过文件头；
+ * 无文件头的数据视为 8kHz 16位单声道PCM。MP3、OGG、FLAC、MP4、WebM 等格式在调用上游之前直接拒绝。
+ * 8kHz/16kHz 单声道音频原样发送（只跳过文件头，不复制数据），其他采样率或多声道音频经 {@link Converter} 转换后发送。
+ * 同时提供WAV文件头的生成与多段WAV的拼接，供分段语音合成使用。
+ */
+public final class AudioInput {
+    /**
+     * 识别格式时读取的最大字节数，WAV文件头需位于此范围内
+     */
+    public static final int MAX_HEADER_BYTES = 4096;
+
+    private static final int DEFAULT_SAMPLE_RATE = 8000;
+    private static final int CONVERTED_SAMPLE_RATE = 16000;
+    private static final int MIN_SAMPLE_RATE = 8000;
+    private static final int MAX_SAMPLE_RATE = 48000;
+    private static final int MAX_CHANNELS = 8;
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final String container;
+    private final int sampleRate;
+    private final int channels;
+    private final int dataOffset;
+    private final long dataLength;
+
+    private AudioInput(String container, int sampleRate, int channels, int dataOffset, long dataLength) {
+        this.container = container;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    /**
+     * 识别音频格式
+     *
+     * @param data 音频数据开头的字节
+     * @param length 有效字节数
+     * @return 音频格式
+     * @throws IllegalArgumentException 不支持的格式或文件头不完整
+     */
+    public static AudioInput sniff(byte[] data, int length) {
+        if (length >= 12 && matches(data, length, 0, "RIFF")) {
+            if (!matches(data, length, 8, "WAVE")) {
+                throw new IllegalArgumentException("不支持的RIFF格式: " + ascii(data, 8));
+            }
+            return parseWav(data, length);
+        }
+        String container = detectUnsupportedContainer(data, length);
+        if (container != null) {
+            throw new IllegalArgumentException("不支持的音频格式: " + container + "，请上传WAV或8kHz 16位单声道PCM");
+        }
+        return new AudioInput("pcm", DEFAULT_SAMPLE_RATE, 1, 0, -1);
+    }
+
+    /**
+     * 容器格式：wav 或 pcm
+     */
+    public String container() {
+        return container;
+    }
+
+    /**
+     * 原始采样率
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 声道数
+     */
+    public int channels() {
+        return channels;
+    }
+
+    /**
+     * 音频数据在输入中的起始偏移
+     */
+    public int dataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * 音频数据长度，未知时为-1（无文件头或流式写入的WAV）
+     */
+    public long dataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 音频数据在长度为 length 的输入中的结束偏移（不包含 data 块之后的其他块）
+     */
+    public int dataEnd(int length) {
+        return dataLength < 0 ? length : (int) Math.min(length, dataOffset + dataLength);
+    }
+
+    /**
+     * 发送给转录器的采样率：8kHz/16kHz 保持不变，其余转换为16kHz
+     */
+    public int outputSampleRate() {
+        return sampleRate == 8000 || sampleRate == 16000 ? sampleRate : CONVERTED_SAMPLE_RATE;
+    }
+
+    /**
+     * 是否需要转换（多声道或采样率不受支持）
+     */
+    public boolean needsConversion() {
+        return channels != 1 || outputSampleRate() != sampleRate;
+    }
+
+    /**
+     * 创建转换器，将音频数据转换为 outputSampleRate 的16位单声道PCM
+     */
+    public Converter newConverter() {
+        return new Converter(channels, (double) sampleRate / outputSampleRate());
+    }
+
+    /**
+     * 生成标准44字节WAV文件头（16位PCM）
+     *
+     * @param dataLength 音频数据长度，未知时传-1（写入0xFFFFFFFF，播放器按流式读取）
+     */
+    public static byte[] wavHeader(int sampleRate, int channels, long dataLength) {
+        long size = dataLength < 0 ? 0xFFFFFFFFL : dataLength;
+        long riffSize = dataLength < 0 ? 0xFFFFFFFFL : Math.min(0xFFFFFFFFL, 36 + dataLength);
+        int blockAlign = channels * 2;
+        byte[] header = new byte[44];
+        writeAscii(header, 0, "RIFF");
+        writeLe32(header, 4, riffSize);
+        writeAscii(header, 8, "WAVE");
+        writeAscii(header, 12, "fmt ");
+        writeLe32(header, 16, 16);
+        writeLe16(header, 20, WAVE_FORMAT_PCM);
+        writeLe16(header, 22, channels);
+        writeLe32(header, 24, sampleRate);
+        writeLe32(header, 28, (long) sampleRate * blockAlign);
+        writeLe16(header, 32, blockAlign);
+        writeLe16(header, 34, 16);
+        writeAscii(header, 36, "data");
+        writeLe32(header, 40, size);
+        return header;
+    }
+
+    /**
+     * 按顺序拼接多段WAV：去掉各段文件头，只保留音频数据，并写入总长度正确的单个文件头
+     *
+     * @throws IllegalArgumentException 各段格式不一致
+     */
+    public static byte[] mergeWav(List<byte[]> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        AudioInput[] inputs = new AudioInput[parts.size()];
+        long total = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            byte[] part = parts.get(i);
+            inputs[i] = sniff(part, part.length);
+            if (inputs[i].sampleRate != inputs[0].sampleRate || inputs[i].channels != inputs[0].channels) {
+                throw new IllegalArgumentException("分段音频格式不一致");
+            }
+            total += inputs[i].dataEnd(part.length) - inputs[i].dataOffset;
+        }
+        byte[] merged = new byte[Math.toIntExact(44 + total)];
+        System.arraycopy(wavHeader(inputs[0].sampleRate, inputs[0].channels, total), 0, merged, 0, 44);
+        int position = 44;
+        for (int i = 0; i < parts.size(); i++) {
+            byte[] part = parts.get(i);
+            int length = inputs[i].dataEnd(part.length) - inputs[i].dataOffset;
+            System.arraycopy(part, inputs[i].dataOffset, merged, position, length);
+            position += length;
+        }
+        return merged;
+    }
+
+    private static AudioInput parseWav(byte[] data, int length) {
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        int offset = 12;
+        while (offset + 8 <= length) {
+            String id = ascii(data, offset);
+            long size = le32(data, offset + 4);
+            int body = offset + 8;
+            if ("fmt ".equals(id)) {
+                if (body + 16 > length) {
+                    break;
+                }
+                format = le16(data, body);
+                channels = le16(data, body + 2);
+                sampleRate = (int) le32(data, body + 4);
+                bitsPerSample = le16(data, body + 14);
+                // 扩展格式的实际编码位于子格式GUID的前两个字节
+                if (format == WAVE_FORMAT_EXTENSIBLE && size >= 40 && body + 26 <= length) {
+                    format = le16(data, body + 24);
+                }
+            } else if ("data".equals(id)) {
+                if (format < 0) {
+                    throw new IllegalArgumentException("WAV文件缺少fmt块");
+                }
+                validate(format, channels, sampleRate, bitsPerSample);
+                // 流式写入的WAV常以0或0xFFFFFFFF作为占位长度
+                long dataLength = size == 0 || size == 0xFFFFFFFFL ? -1 : size;
+                return new AudioInput("wav", sampleRate, channels, body, dataLength);
+            }
+            long next = body + size + (size & 1);
+            if (next > length) {
+                break;
+            }
+            offset = (int) next;
+        }
+        throw new IllegalArgumentException("WAV文件头不完整或超过" + MAX_HEADER_BYTES + "字节");
+    }
+
+    private static void validate(int format, int channels, int sampleRate, int bitsPerSample) {
+        if (format != WAVE_FORMAT_PCM) {
+            throw new IllegalArgumentException("仅支持PCM编码的WAV，当前编码: 0x" + Integer.toHexString(format));
+        }
+        if (bitsPerSample != 16) {
+            throw new IllegalArgumentException("仅支持16位采样的WAV，当前位深: " + bitsPerSample);
+        }
+        if (channels < 1 || channels > MAX_CHANNELS) {
+            throw new IllegalArgumentException("不支持的声道数: " + channels);
+        }
+        if (sampleRate < MIN_SAMPLE_RATE || sampleRate > MAX_SAMPLE_RATE) {
+            throw new IllegalArgumentException("不支持的采样率: " + sampleRate);
+        }
+    }
+
+    /**
+     * 识别常见的其他音频容器，未识别时返回null
+     */
+    private static String detectUnsupportedContainer(byte[] data, int length) {
+        if (matches(data, length, 0, "RF64")) {
+            return "RF64";
+        }
+        if (matches(data, length, 0, "ID3") || isMpegFrameHeader(data, length)) {
+            return "MP3";
+        }
+        if (matches(data, length, 0, "OggS")) {
+            return "OGG";
+        }
+        if (matches(data, length, 0, "fLaC")) {
+            return "FLAC";
+        }
+        if (matches(data, length, 4, "ftyp")) {
+            return "MP4/M4A";
+        }
+        if (matches(data, length, 0, "#!AMR")) {
+            return "AMR";
+        }
+        if (length >= 4 && (data[0] & 0xff) == 0x1a && (data[1] & 0xff) == 0x45
+                && (data[2] & 0xff) == 0xdf && (data[3] & 0xff) == 0xa3) {
+            return "WebM/Matroska";
+        }
+        return null;
+    }
+
+    /**
+     * 校验MPEG音频帧头；同时检查版本、层、码率和采样率字段，避免把以0xFF开头的PCM误判为MP3
+     */
+    private static boolean isMpegFrameHeader(byte[] data, int length) {
+        if (length < 4 || (data[0] & 0xff) != 0xff || (data[1] & 0xe0) != 0xe0) {
+            return false;
+        }
+        int version = (data[1] >> 3) & 0x3;
+        int layer = (data[1] >> 1) & 0x3;
+        int bitrate = (data[2] >> 4) & 0xf;
+        int sampleRate = (data[2] >> 2) & 0x3;
+        return version != 1 && layer != 0 && bitrate != 0 && bitrate != 0xf && sampleRate != 3;
+    }
+
+    private static boolean matches(byte[] data, int length, int offset, String magic) {
+        if (offset + magic.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (data[offset + i] != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(byte[] data, int offset) {
+        return new String(data, offset, Math.min(4, data.length - offset), StandardCharsets.US_ASCII);
+    }
+
+    private static int le16(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+    }
+
+    private static long le32(byte[] data, int offset) {
+        return (data[offset] & 0xffL) | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16 | (data[offset + 3] & 0xffL) << 24;
+    }
+
+    private static void writeAscii(byte[] data, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            data[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void writeLe16(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeLe32(byte[] data, int offset, long value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * 流式PCM转换器：多声道取平均混为单声道，再线性插值重采样
+     * 降采样（如 44.1k/48k 到 16k）时先对最近 ceil(step) 个采样做滑动平均低通，抑制高于目标奈奎斯特频率的成分混叠；
+     * 滑动平均的阻带衰减有限（如 48k 降到 16k 时 12kHz 成分只衰减约10dB），仍有部分混叠，语音能量集中在低频，识别影响较小。
+     * 可逐段调用，段间保留不足一帧的字节、滤波窗口和插值位置，输出与一次性转换一致
+     */
+    public static final class Converter {
+        private final int channels;
+        private final double step;
+        private final byte[] pending;
+        private int pendingBytes;
+        private double position;
+        private int previous;
+
+        // 滑动平均窗口，升采样时长度为1即不滤波
+        private final int[] window;
+        private int windowPos;
+        private long windowSum;
+        private boolean primed;
+
+        private Converter(int channels, double step) {
+            this.channels = channels;
+            this.step = step;
+            this.pending = new byte[channels * 2];
+            this.window = new int[step > 1 ? (int) Math.ceil(step) : 1];
+        }
+
+        /**
+         * 转换一段音频数据
+         *
+         * @return 16位单声道PCM
+         */
+        public byte[] convert(byte[] data, int offset, int length) {
+            int frameBytes = channels * 2;
+            int total = pendingBytes + length;
+            int frames = total / frameBytes;
+            int[] mono = new int[frames];
+            for (int frame = 0; frame < frames; frame++) {
+                int sum = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    int k = frame * frameBytes + channel * 2;
+                    sum += (short) ((byteAt(data, offset, k) & 0xff) | byteAt(data, offset, k + 1) << 8);
+                }
+                mono[frame] = sum / channels;
+            }
+            int leftover = total - frames * frameBytes;
+            byte[] rest = new byte[leftover];
+            for (int i = 0; i < leftover; i++) {
+                rest[i] = byteAt(data, offset, frames * frameBytes + i);
+            }
+            System.arraycopy(rest, 0, pending, 0, leftover);
+            pendingBytes = leftover;
+            if (frames == 0) {
+                return new byte[0];
+            }
+            lowPass(mono);
+
+            byte[] out = new byte[((int) ((frames + 1) / step) + 2) * 2];
+            int n = 0;
+            double t = position;
+            while (t <= frames - 1) {
+                int i = (int) Math.floor(t);
+                double fraction = t - i;
+                // 位置为负时引用上一段的最后一个采样
+                int a = i < 0 ? previous : mono[i];
+                int b = i + 1 < frames ? mono[i + 1] : a;
+                int value = (int) Math.round(a + (b - a) * fraction);
+                out[n++] = (byte) value;
+                out[n++] = (byte) (value >> 8);
+                t += step;
+            }
+            position = t - frames;
+            previous = mono[frames - 1];
+            return Arrays.copyOf(out, n);
+        }
+
+        /**
+         * 原地做滑动平均，窗口以第一个采样填充，避免开头的突变
+         */
+        private void lowPass(int[] mono) {
+            int taps = window.length;
+            if (taps == 1) {
+                return;
+            }
+            for (int j = 0; j < mono.length; j++) {
+                int sample = mono[j];
+                if (!primed) {
+                    Arrays.fill(window, sample);
+                    windowSum = (long) sample * taps;
+                    primed = true;
+                }
+                windowSum += sample - window[windowPos];
+                window[windowPos] = sample;
+                windowPos = windowPos + 1 == taps ? 0 : windowPos + 1;
+                mono[j] = (int) (windowSum / taps);
+            }
+        }
+
+        private byte byteAt(byte[] data, int offset, int index) {
+            return index < pendingBytes ? pending[index] : data[offset + index - pendingBytes];
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.ConversationMemoryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 按会话ID隔离的有界对话记忆
+ * 每个会话受token预算和消息数限制，全局按LRU淘汰冷会话。
+ * 未指定会话ID（默认会话）的请求视为无状态，不读写历史。
+ * 写入同时追加到 ConversationLogStore；内存中没有的会话（被淘汰或重启后）从磁盘恢复最近的消息。
+ * 会话被清除或淘汰时通知监听器，依附于会话的状态（如滚动摘要）随之释放。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BoundedConversationMemory implements ChatMemory {
+    private final ConversationMemoryProperties properties;
+    private final ConversationLogStore conversationLogStore;
+
+    // 按访问顺序排列，便于LRU淘汰
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalTokens;
+
+    private final AtomicLong trimmedMessages = new AtomicLong();
+    private final AtomicLong evictedConversations = new AtomicLong();
+    private final AtomicLong restoredConversations = new AtomicLong();
+
+    // 会话被清除或淘汰时的回调
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public synchronized void add(String conversationId, List<Message> messages) {
+        if (isStateless(conversationId) || messages.isEmpty()) {
+            return;
+        }
+        Conversation conversation = conversations.computeIfAbsent(conversationId, k -> new Conversation());
+        append(conversation, messages);
+        conversationLogStore.append(conversationId, messages);
+        evictColdConversations(conversationId);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        if (isStateless(conversationId)) {
+            return List.of();
+        }
+        synchronized (this) {
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation != null) {
+                return snapshot(conversation);
+            }
+        }
+        // 磁盘读取不持有锁
+        List<Message> restored = conversationLogStore.load(conversationId, properties.getMaxMessages());
+        synchronized (this) {
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation == null) {
+                if (restored.isEmpty()) {
+                    return List.of();
+                }
+                conversation = new Conversation();
+                conversations.put(conversationId, conversation);
+                append(conversation, restored);
+                restoredConversations.incrementAndGet();
+                evictColdConversations(conversationId);
+            }
+            return snapshot(conversation);
+        }
+    }
+
+    @Override
+    public synchronized void clear(String conversationId) {
+        Conversation removed = conversations.remove(conversationId);
+        if (removed != null) {
+            totalTokens -= removed.tokens;
+        }
+        conversationLogStore.clear(conversationId);
+        notifyRemoved(conversationId);
+    }
+
+    /**
+     * 读取内存中的会话历史及其第一条消息的序号（会话内从0开始递增，裁剪最早的消息后随之增加）
+     * 不从磁盘恢复；会话不在内存中时返回空窗口
+     */
+    public synchronized HistoryWindow getWindow(String conversationId) {
+        Conversation conversation = isStateless(conversationId) ? null : conversations.get(conversationId);
+        if (conversation == null) {
+            return new HistoryWindow(List.of(), 0);
+        }
+        return new HistoryWindow(snapshot(conversation), conversation.firstIndex);
+    }
+
+    /**
+     * 注册会话被清除或淘汰时的回调，回调在持有记忆锁时执行，应保持轻量
+     */
+    public void addRemovalListener(Consumer<String> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * 获取会话记忆统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("conversations", conversations.size());
+        stats.put("totalTokens", totalTokens);
+        stats.put("avgTokensPerConversation", conversations.isEmpty() ? 0 : totalTokens / conversations.size());
+        stats.put("tokenBudget", properties.getTokenBudget());
+        stats.put("maxConversations", properties.getMaxConversations());
+        stats.put("globalTokenLimit", properties.getGlobalTokenLimit());
+        stats.put("trimmedMessages", trimmedMessages.get());
+        stats.put("evictedConversations", evictedConversations.get());
+        stats.put("restoredConversations", restoredConversations.get());
+        return stats;
+    }
+
+    private void append(Conversation conversation, List<Message> messages) {
+        for (Message message : messages) {
+            int tokens = TokenEstimator.estimate(message.getText());
+            conversation.entries.addLast(new Entry(message, tokens));
+            conversation.tokens += tokens;
+            totalTokens += tokens;
+        }
+        trim(conversation);
+    }
+
+    private static List<Message> snapshot(Conversation conversation) {
+        List<Message> messages = new ArrayList<>(conversation.entries.size());
+        for (Entry entry : conversation.entries) {
+            messages.add(entry.message);
+        }
+        return messages;
+    }
+
+    /**
+     * 丢弃最早的消息直到满足token预算和消息数限制（至少保留最新一条）
+     */
+    private void trim(Conversation conversation) {
+        while (conversation.entries.size() > 1
+                && (conversation.tokens > properties.getTokenBudget()
+                || conversation.entries.size() > properties.getMaxMessages())) {
+            Entry oldest = conversation.entries.removeFirst();
+            conversation.firstIndex++;
+            conversation.tokens -= oldest.tokens;
+            totalTokens -= oldest.tokens;
+            trimmedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * 超出全局限制时按LRU淘汰冷会话，当前会话不参与淘汰
+     */
+    private void evictColdConversations(String currentId) {
+        Iterator<Map.Entry<String, Conversation>> iterator = conversations.entrySet().iterator();
+        while ((conversations.size() > properties.getMaxConversations() || totalTokens > properties.getGlobalTokenLimit())
+                && iterator.hasNext()) {
+            Map.Entry<String, Conversation> eldest = iterator.next();
+            if (eldest.getKey().equals(currentId)) {
+                continue;
+            }
+            iterator.remove();
+            totalTokens -= eldest.getValue().tokens;
+            evictedConversations.incrementAndGet();
+            log.debug("淘汰冷会话: {}", eldest.getKey());
+            notifyRemoved(eldest.getKey());
+        }
+    }
+
+    private void notifyRemoved(String conversationId) {
+        for (Consumer<String> listener : removalListeners) {
+            listener.accept(conversationId);
+        }
+    }
+
+    private static boolean isStateless(String conversationId) {
+        return conversationId == null || ChatMemory.DEFAULT_CONVERSATION_ID.equals(conversationId);
+    }
+
+    /**
+     * 单个会话的历史
+     */
+    private static class Conversation {
+        final Deque<Entry> entries = new ArrayDeque<>();
+        int tokens;
+        long firstIndex; // 第一条消息在会话中的序号
+    }
+
+    /**
+     * 会话历史窗口
+     *
+     * @param messages 按时间顺序排列的消息
+     * @param firstIndex 第一条消息在会话中的序号
+     */
+    public record HistoryWindow(List<Message> messages, long firstIndex) {
+    }
+
+    /**
+     * 历史消息及其token估算
+     */
+    private record Entry(Message message, int tokens) {
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.model.CharacterProfile;
+
+/**
+ * 角色配置变更事件
+ * 角色新增、更新或删除时发布，删除时 profile 为 null
+ *
+ * @param characterId 角色ID
+ * @param profile 变更后的角色配置
+ */
+public record CharacterProfileChangedEvent(String characterId, CharacterProfile profile) {
+}
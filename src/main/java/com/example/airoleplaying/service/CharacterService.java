@@ -2,9 +2,12 @@ package com.example.airoleplaying.service;
 
 import com.example.airoleplaying.model.CharacterProfile;
 import com.example.airoleplaying.model.CharacterSkill;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -21,7 +24,7 @@ import java.util.stream.Stream;
 @Service
 @Slf4j
 @ConfigurationProperties(prefix = "character")
-public class CharacterService {
+public class CharacterService implements ApplicationEventPublisherAware {
 
 
     /**
@@ -29,6 +32,12 @@ public class CharacterService {
      */
     private Map<String, CharacterProfile> profiles = new HashMap<>();
 
+    /**
+     * 事件发布器，用于通知角色配置变更
+     */
+    @Getter(AccessLevel.NONE)
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 默认角色配置
      */
@@ -314,6 +323,7 @@ public class CharacterService {
     public void setCharacterProfile(String characterId, CharacterProfile profile) {
         profiles.put(characterId, profile);
         log.info("更新角色配置: {} -> {}", characterId, profile.getName());
+        publishProfileChanged(characterId, profile);
     }
 
     /**
@@ -331,6 +341,7 @@ public class CharacterService {
         CharacterProfile removed = profiles.remove(characterId);
         if (removed != null) {
             log.info("删除角色配置: {}", characterId);
+            publishProfileChanged(characterId, null);
             return true;
         }
         return false;
@@ -502,6 +513,20 @@ public class CharacterService {
         return stats;
     }
 
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.eventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * 发布角色配置变更事件
+     */
+    private void publishProfileChanged(String characterId, CharacterProfile profile) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new CharacterProfileChangedEvent(characterId, profile));
+        }
+    }
+
     // Spring Boot Configuration Properties 需要的 setter 方法
     public void setProfiles(Map<String, CharacterProfile> profiles) {
         if (profiles != null) {
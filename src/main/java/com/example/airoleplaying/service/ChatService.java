@@ -4,7 +4,7 @@ import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
 
@@ -12,14 +12,25 @@ import org.springframework.stereotype.Service;
 public class ChatService {
     private static final String DEFAULT_PROMPT = "你是一个博学的智能聊天助手，请根据用户提问回答！";
 
+    /**
+     * ChatClient 默认的 top-p 参数，请求级 Options 覆盖默认值时需一并设置
+     */
+    public static final double TOP_P = 0.7;
+
     @Bean
-    public ChatClient dashScopeChatClient(ChatClient.Builder chatClientBuilder) {
+    public ChatClient dashScopeChatClient(ChatClient.Builder chatClientBuilder, ChatMemory conversationMemory,
+                                          HistoryCompactionAdvisor historyCompactionAdvisor) {
         return chatClientBuilder
                 .defaultSystem(DEFAULT_PROMPT)
                 // 实现 Chat Memory 的 Advisor
-                // 在使用 Chat Memory 时，需要指定对话 ID，以便 Spring AI 处理上下文。
+                // 在使用 Chat Memory 时，需要指定对话 ID（ChatMemory.CONVERSATION_ID），以便 Spring AI 处理上下文；
+                // 未指定时为默认会话，BoundedConversationMemory 将其视为无状态请求。
+                .defaultAdvisors(
+                        MessageChatMemoryAdvisor.builder(conversationMemory).build()
+                )
+                // 历史过长时以滚动摘要替换较早的轮次
                 .defaultAdvisors(
-                        MessageChatMemoryAdvisor.builder(MessageWindowChatMemory.builder().build()).build()
+                        historyCompactionAdvisor
                 )
                 // 实现 Logger 的 Advisor
                 .defaultAdvisors(
@@ -28,7 +39,7 @@ public class ChatService {
                 // 设置 ChatClient 中 ChatModel 的 Options 参数
                 .defaultOptions(
                         DashScopeChatOptions.builder()
-                                .withTopP(0.7)
+                                .withTopP(TOP_P)
                                 .build()
                 )
                 .build();
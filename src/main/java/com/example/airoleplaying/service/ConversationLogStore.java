@@ -0,0 +1,981 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.ConversationStoreProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 会话日志存储
+ * 会话消息以追加方式写入本地磁盘的分段日志，由单个写线程组提交（批量写入后一次fsync）。
+ * 内存映射的索引文件为每个会话保存最近若干条消息在日志中的位置，读取最近轮次时按位置直接读取，
+ * 无需反序列化整个会话历史。后台定期清理过期会话与日志段，并压缩有效记录比例过低的日志段。
+ * 每个索引槽位带版本号（顺序锁），读线程在写线程更新槽位期间读到的位置会被丢弃重读。
+ * 记录的时间戳在写入时保证严格递增，压缩搬移的记录保留原时间戳，从日志重建索引时按时间戳排序恢复原始顺序。
+ * 索引的删除标记或负载超过阈值时，写线程将有效槽位复制到新的索引文件（负载过高时扩容）后替换旧索引。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationLogStore {
+    private static final int RECORD_MAGIC = 0x434F4E31;   // "CON1"
+    private static final int RECORD_HEADER_SIZE = 23;     // magic(4) + crc(4) + type(1) + timestamp(8) + idLen(2) + textLen(4)
+    private static final int INDEX_MAGIC = 0x49445832;    // "IDX2"
+    private static final int INDEX_HEADER_SIZE = 32;      // magic(4) + slots(4) + depth(4) + checkpointSegment(4) + checkpointOffset(4) + 保留
+    private static final int SLOT_HEADER_SIZE = 32;       // state(4) + count(4) + hash(8) + updatedAt(8) + version(4) + 保留
+    private static final int SLOT_VERSION_OFFSET = 24;
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    private static final int INDEX_ENTRY_SIZE = 8;        // segmentId(4) + offset(4)
+    private static final String SEGMENT_PREFIX = "log-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String INDEX_FILE = "conversations.idx";
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final byte TYPE_USER = 1;
+    private static final byte TYPE_ASSISTANT = 2;
+    private static final byte TYPE_SYSTEM = 3;
+    private static final byte TYPE_CLEAR = 4;
+    // 压缩时搬移的记录，已在索引中，恢复时不重复索引
+    private static final byte FLAG_COMPACTED = (byte) 0x80;
+
+    private static final int SLOT_EMPTY = 0;
+    private static final int SLOT_USED = 1;
+    private static final int SLOT_DELETED = 2;
+
+    private final ConversationStoreProperties properties;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile Segment active;
+    private volatile boolean available;
+    private volatile boolean running;
+
+    // 读线程通过该引用访问索引，重建索引时整体替换
+    private volatile IndexFile index;
+    private int slotSize;
+    // 以下状态仅由写线程（初始化期间为初始化线程）修改
+    private int usedSlots;
+    private int deletedSlots;
+    private long lastTimestamp;
+    private volatile boolean indexSaturated;
+
+    private BlockingQueue<Pending> queue;
+    private Thread writer;
+    private ByteBuffer batchBuffer = ByteBuffer.allocate(64 * 1024);
+
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadedMessages = new AtomicLong();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong compactedRecords = new AtomicLong();
+    private final AtomicLong expiredSegments = new AtomicLong();
+    private final AtomicLong expiredConversations = new AtomicLong();
+    private final AtomicLong indexFull = new AtomicLong();
+    private final AtomicLong indexRebuilds = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(properties.getPath());
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(dir)) {
+                files = stream.filter(ConversationLogStore::isSegmentFile).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = openSegment(file, parseSegmentId(file));
+                scanSegment(segment, segment.id == parseSegmentId(files.get(files.size() - 1)));
+                segments.put(segment.id, segment);
+            }
+            if (segments.isEmpty()) {
+                rollSegment();
+            }
+            active = segments.lastEntry().getValue();
+            boolean rebuilt = openIndex(dir.resolve(INDEX_FILE));
+            replayAfterCheckpoint(rebuilt);
+
+            queue = new LinkedBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+            running = true;
+            available = true;
+            writer = new Thread(this::writeLoop, "conversation-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+            log.info("会话日志存储初始化完成: 日志段 {} 个, 索引槽位 {} 个", segments.size(), index.slots);
+        } catch (IOException e) {
+            log.error("会话日志存储初始化失败，会话历史仅保存在内存中: {}", e.getMessage(), e);
+            available = false;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!available) {
+            return;
+        }
+        running = false;
+        try {
+            // 写线程退出前会写完队列中的记录
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        available = false;
+        index.buffer.force();
+        for (Segment segment : segments.values()) {
+            closeQuietly(segment.channel);
+        }
+        closeQuietly(index.channel);
+    }
+
+    /**
+     * 追加会话消息（异步组提交）
+     */
+    public void append(String conversationId, List<Message> messages) {
+        if (!available) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Message message : messages) {
+            byte type = switch (message.getMessageType()) {
+                case USER -> TYPE_USER;
+                case ASSISTANT -> TYPE_ASSISTANT;
+                case SYSTEM -> TYPE_SYSTEM;
+                default -> 0;
+            };
+            if (type != 0) {
+                enqueue(new Pending(conversationId, type, message.getText() == null ? "" : message.getText(), now));
+            }
+        }
+    }
+
+    /**
+     * 清除会话历史（写入清除记录）
+     */
+    public void clear(String conversationId) {
+        if (available) {
+            enqueue(new Pending(conversationId, TYPE_CLEAR, "", System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 读取会话最近的消息：通过索引定位后只读取所需记录
+     *
+     * @param conversationId 会话ID
+     * @param limit 最多读取的消息数
+     * @return 按时间顺序排列的消息，无记录时返回空列表
+     */
+    public List<Message> load(String conversationId, int limit) {
+        if (!available) {
+            return List.of();
+        }
+        long hash = hash(conversationId);
+        List<Message> messages = List.of();
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            IndexFile index = this.index;
+            int slot = findSlot(index, hash, false);
+            Locations locations = slot < 0 ? null : readLocations(index, slotBase(slot), hash, limit);
+            if (locations == null) {
+                messages = List.of();
+                break;
+            }
+            messages = new ArrayList<>(locations.entries.length);
+            boolean missing = false;
+            for (long location : locations.entries) {
+                Segment segment = segments.get((int) (location >>> 32));
+                Record record = null;
+                if (segment != null) {
+                    try {
+                        record = readRecord(segment, (int) location);
+                    } catch (IOException e) {
+                        log.debug("读取会话记录失败: {}: {}", conversationId, e.getMessage());
+                    }
+                }
+                if (record == null) {
+                    missing = true;
+                } else if (record.conversationId.equals(conversationId)) {
+                    messages.add(toMessage(record));
+                }
+            }
+            // 读取期间记录被压缩搬移、原日志段已删除时按新位置重读；日志段过期删除时槽位未变，直接跳过
+            if (!missing || (this.index == index && index.readVersion(slotBase(slot)) == locations.version)) {
+                break;
+            }
+        }
+        loads.incrementAndGet();
+        loadedMessages.addAndGet(messages.size());
+        return messages;
+    }
+
+    /**
+     * 在槽位版本不变的前提下读取最近消息的位置（顺序锁读端），写线程正在更新该槽位时重试
+     *
+     * @return 槽位已被其他会话占用时返回null
+     */
+    private Locations readLocations(IndexFile index, int base, long hash, int limit) {
+        int depth = properties.getIndexDepth();
+        while (true) {
+            int version = index.readVersion(base);
+            if ((version & 1) == 0) {
+                boolean owned = index.getInt(base) == SLOT_USED && index.getLong(base + 8) == hash;
+                int count = index.getInt(base + 4);
+                int n = Math.max(0, Math.min(Math.min(count, depth), limit));
+                long[] entries = new long[n];
+                for (int i = 0; i < n; i++) {
+                    int entry = base + SLOT_HEADER_SIZE + ((count - n + i) % depth) * INDEX_ENTRY_SIZE;
+                    entries[i] = ((long) index.getInt(entry) << 32) | (index.getInt(entry + 4) & 0xFFFFFFFFL);
+                }
+                VarHandle.loadLoadFence();
+                if (index.readVersion(base) == version) {
+                    return owned ? new Locations(version, entries) : null;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 获取存储统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long batchCount = batches.get();
+        long diskBytes = 0;
+        for (Segment segment : segments.values()) {
+            diskBytes += segment.size;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", available);
+        stats.put("segments", segments.size());
+        stats.put("diskBytes", diskBytes);
+        stats.put("pendingWrites", queue == null ? 0 : queue.size());
+        stats.put("recordsWritten", recordsWritten.get());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0.0 : (double) recordsWritten.get() / batchCount);
+        stats.put("droppedWrites", droppedWrites.get());
+        stats.put("writeFailures", writeFailures.get());
+        stats.put("loads", loads.get());
+        stats.put("loadedMessages", loadedMessages.get());
+        stats.put("compactedSegments", compactedSegments.get());
+        stats.put("compactedRecords", compactedRecords.get());
+        stats.put("expiredSegments", expiredSegments.get());
+        stats.put("expiredConversations", expiredConversations.get());
+        stats.put("indexFull", indexFull.get());
+        stats.put("indexHealthy", isIndexHealthy());
+        stats.put("indexSlots", index == null ? 0 : index.slots);
+        stats.put("indexUsedSlots", usedSlots);
+        stats.put("indexDeletedSlots", deletedSlots);
+        stats.put("indexRebuilds", indexRebuilds.get());
+        return stats;
+    }
+
+    /**
+     * 索引是否健康：索引已满、新会话无法持久化时返回false，重建腾出空间后恢复
+     */
+    public boolean isIndexHealthy() {
+        return !available || !indexSaturated;
+    }
+
+    private void enqueue(Pending pending) {
+        if (!queue.offer(pending)) {
+            droppedWrites.incrementAndGet();
+        }
+    }
+
+    /**
+     * 写线程：收集一批记录后写入并fsync一次，空闲时执行后台维护
+     */
+    private void writeLoop() {
+        long flushNanos = properties.getFlushInterval().toNanos();
+        long maintenanceInterval = properties.getCompactionInterval().toMillis();
+        long nextMaintenance = System.currentTimeMillis() + maintenanceInterval;
+        List<Pending> batch = new ArrayList<>(properties.getMaxBatch());
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushNanos;
+                    while (batch.size() < properties.getMaxBatch()) {
+                        long remaining = deadline - System.nanoTime();
+                        Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                if (running && System.currentTimeMillis() >= nextMaintenance) {
+                    maintain();
+                    nextMaintenance = System.currentTimeMillis() + maintenanceInterval;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                writeFailures.addAndGet(Math.max(1, batch.size()));
+                batch.clear();
+                log.warn("会话日志写入失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        List<int[]> locations = new ArrayList<>(batch.size());
+        long[] timestamps = new long[batch.size()];
+        batchBuffer.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            // 时间戳严格递增，重建索引时按时间戳即可恢复写入顺序
+            timestamps[i] = Math.max(pending.timestamp, lastTimestamp + 1);
+            lastTimestamp = timestamps[i];
+            byte[] record = encode(pending.type, pending.conversationId, pending.text, timestamps[i]);
+            if (active.size + batchBuffer.position() + record.length > properties.getSegmentSize()
+                    && active.size + batchBuffer.position() > 0) {
+                flushBatchBuffer();
+                active.channel.force(false);
+                rollSegment();
+            }
+            locations.add(new int[]{active.id, active.size + batchBuffer.position()});
+            ensureBatchCapacity(record.length);
+            batchBuffer.put(record);
+            active.records++;
+        }
+        flushBatchBuffer();
+        active.channel.force(false);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            applyToIndex(pending.conversationId, pending.type, locations.get(i)[0], locations.get(i)[1], timestamps[i]);
+        }
+        writeCheckpoint();
+        recordsWritten.addAndGet(batch.size());
+        batches.incrementAndGet();
+        rebuildIndexIfNeeded();
+    }
+
+    private void flushBatchBuffer() throws IOException {
+        batchBuffer.flip();
+        while (batchBuffer.hasRemaining()) {
+            active.size += active.channel.write(batchBuffer, active.size);
+        }
+        batchBuffer.clear();
+    }
+
+    private void ensureBatchCapacity(int length) {
+        if (batchBuffer.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(batchBuffer.capacity() * 2, batchBuffer.position() + length));
+            batchBuffer.flip();
+            larger.put(batchBuffer);
+            batchBuffer = larger;
+        }
+    }
+
+    /**
+     * 后台维护：清理过期会话和日志段，压缩有效记录比例过低的日志段
+     */
+    private void maintain() throws IOException {
+        long expireBefore = System.currentTimeMillis() - properties.getRetention().toMillis();
+        int depth = properties.getIndexDepth();
+        Map<Integer, Integer> live = new HashMap<>();
+        for (int slot = 0; slot < index.slots; slot++) {
+            int base = slotBase(slot);
+            if (index.getInt(base) != SLOT_USED) {
+                continue;
+            }
+            if (index.getLong(base + 16) < expireBefore) {
+                index.beginWrite(base);
+                index.putInt(base + 4, 0);
+                index.putInt(base, SLOT_DELETED);
+                index.endWrite(base);
+                usedSlots--;
+                deletedSlots++;
+                expiredConversations.incrementAndGet();
+                continue;
+            }
+            int count = index.getInt(base + 4);
+            for (int i = Math.max(0, count - depth); i < count; i++) {
+                live.merge(index.getInt(base + SLOT_HEADER_SIZE + (i % depth) * INDEX_ENTRY_SIZE), 1, Integer::sum);
+            }
+        }
+
+        for (Segment segment : List.copyOf(segments.values())) {
+            if (segment == active) {
+                continue;
+            }
+            int liveRecords = live.getOrDefault(segment.id, 0);
+            if (liveRecords == 0 || Files.getLastModifiedTime(segment.path).toMillis() < expireBefore) {
+                deleteSegment(segment);
+                expiredSegments.incrementAndGet();
+            } else if (segment.records > 0 && (double) liveRecords / segment.records < properties.getMinLiveRatio()) {
+                compactSegment(segment);
+            }
+        }
+        index.buffer.force();
+        rebuildIndexIfNeeded();
+    }
+
+    /**
+     * 将日志段中仍被索引引用的记录搬移到当前日志段，并更新索引后删除该段
+     */
+    private void compactSegment(Segment segment) throws IOException {
+        int depth = properties.getIndexDepth();
+        int moved = 0;
+        for (int slot = 0; slot < index.slots; slot++) {
+            int base = slotBase(slot);
+            if (index.getInt(base) != SLOT_USED) {
+                continue;
+            }
+            int count = index.getInt(base + 4);
+            for (int i = Math.max(0, count - depth); i < count; i++) {
+                int entry = base + SLOT_HEADER_SIZE + (i % depth) * INDEX_ENTRY_SIZE;
+                if (index.getInt(entry) != segment.id) {
+                    continue;
+                }
+                Record record = readRecord(segment, index.getInt(entry + 4));
+                if (record == null) {
+                    continue;
+                }
+                byte[] bytes = encode((byte) (record.type | FLAG_COMPACTED), record.conversationId, record.text,
+                        record.timestamp);
+                if (active.size + bytes.length > properties.getSegmentSize()) {
+                    active.channel.force(false);
+                    rollSegment();
+                }
+                int offset = active.size;
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    active.size += active.channel.write(buffer, active.size);
+                }
+                active.records++;
+                // 日志段号和偏移量需成对更新，读线程通过槽位版本号识别更新中的条目
+                index.beginWrite(base);
+                index.putInt(entry, active.id);
+                index.putInt(entry + 4, offset);
+                index.endWrite(base);
+                moved++;
+            }
+        }
+        active.channel.force(false);
+        writeCheckpoint();
+        deleteSegment(segment);
+        compactedSegments.incrementAndGet();
+        compactedRecords.addAndGet(moved);
+        log.debug("会话日志段已压缩: {}, 搬移记录 {} 条", segment.id, moved);
+    }
+
+    private void applyToIndex(String conversationId, byte type, int segmentId, int offset, long timestamp)
+            throws IOException {
+        long hash = hash(conversationId);
+        int slot = findSlot(index, hash, true);
+        if (slot < 0) {
+            // 没有空闲或已删除的槽位：可扩容时立即重建后重试
+            if (nextIndexSlots() > index.slots) {
+                rebuildIndex(nextIndexSlots());
+                slot = findSlot(index, hash, true);
+            }
+        }
+        if (slot < 0) {
+            indexFull.incrementAndGet();
+            if (!indexSaturated) {
+                indexSaturated = true;
+                log.error("会话索引已满（{} 个槽位且无法扩容），新会话将不会被持久化", index.slots);
+            }
+            return;
+        }
+        int base = slotBase(slot);
+        index.beginWrite(base);
+        if (type == TYPE_CLEAR) {
+            index.putInt(base + 4, 0);
+        } else {
+            int count = index.getInt(base + 4);
+            int entry = base + SLOT_HEADER_SIZE + (count % properties.getIndexDepth()) * INDEX_ENTRY_SIZE;
+            index.putInt(entry, segmentId);
+            index.putInt(entry + 4, offset);
+            index.putInt(base + 4, count + 1);
+        }
+        index.putLong(base + 16, timestamp);
+        index.endWrite(base);
+    }
+
+    /**
+     * 开放寻址查找会话槽位
+     *
+     * @param create 未找到时是否分配新槽位
+     * @return 槽位号，未找到或索引已满时返回-1
+     */
+    private int findSlot(IndexFile index, long hash, boolean create) {
+        int slots = index.slots;
+        int start = (int) Math.floorMod(hash, (long) slots);
+        int firstDeleted = -1;
+        for (int i = 0; i < slots; i++) {
+            int slot = (start + i) % slots;
+            int base = slotBase(slot);
+            int state = index.getInt(base);
+            if (state == SLOT_EMPTY) {
+                if (!create) {
+                    return -1;
+                }
+                int target = firstDeleted >= 0 ? firstDeleted : slot;
+                claimSlot(index, target, hash, firstDeleted >= 0);
+                return target;
+            }
+            if (state == SLOT_USED && index.getLong(base + 8) == hash) {
+                return slot;
+            }
+            if (state == SLOT_DELETED && firstDeleted < 0) {
+                firstDeleted = slot;
+            }
+        }
+        if (create && firstDeleted >= 0) {
+            claimSlot(index, firstDeleted, hash, true);
+            return firstDeleted;
+        }
+        return -1;
+    }
+
+    private void claimSlot(IndexFile index, int slot, long hash, boolean reuseDeleted) {
+        int base = slotBase(slot);
+        index.beginWrite(base);
+        index.putInt(base + 4, 0);
+        index.putLong(base + 8, hash);
+        index.putInt(base, SLOT_USED);
+        index.endWrite(base);
+        usedSlots++;
+        if (reuseDeleted) {
+            deletedSlots--;
+        }
+    }
+
+    /**
+     * 删除标记过多或负载过高时重建索引
+     */
+    private void rebuildIndexIfNeeded() throws IOException {
+        int slots = index.slots;
+        if (usedSlots > slots * properties.getIndexMaxLoad()) {
+            int next = nextIndexSlots();
+            if (next > slots || deletedSlots > 0) {
+                rebuildIndex(next);
+            }
+        } else if (deletedSlots > slots * properties.getIndexMaxTombstones()) {
+            rebuildIndex(slots);
+        }
+    }
+
+    /**
+     * 重建后的槽位数：负载过高时翻倍，受映射文件大小上限约束
+     */
+    private int nextIndexSlots() {
+        int slots = index.slots;
+        if (usedSlots <= slots * properties.getIndexMaxLoad()) {
+            return slots;
+        }
+        long doubled = (long) slots * 2;
+        return INDEX_HEADER_SIZE + doubled * slotSize <= Integer.MAX_VALUE ? (int) doubled : slots;
+    }
+
+    /**
+     * 将有效槽位复制到新的索引文件后替换旧索引，清除删除标记
+     * 新索引写好并落盘后再原子替换文件，中途失败时旧索引保持可用
+     */
+    private void rebuildIndex(int slots) throws IOException {
+        long start = System.currentTimeMillis();
+        IndexFile old = index;
+        Path file = Paths.get(properties.getPath()).resolve(INDEX_FILE);
+        Path temp = Paths.get(properties.getPath()).resolve(INDEX_FILE + ".tmp");
+        Files.deleteIfExists(temp);
+        IndexFile fresh = mapIndex(temp, slots);
+        initIndexHeader(fresh, slots);
+        int previousUsed = usedSlots;
+        int previousDeleted = deletedSlots;
+        usedSlots = 0;
+        deletedSlots = 0;
+        byte[] slotBytes = new byte[slotSize];
+        for (int slot = 0; slot < old.slots; slot++) {
+            int base = slotBase(slot);
+            if (old.getInt(base) != SLOT_USED) {
+                continue;
+            }
+            int target = findSlot(fresh, old.getLong(base + 8), true);
+            old.buffer.get(base, slotBytes);
+            fresh.buffer.put(slotBase(target), slotBytes);
+        }
+        fresh.putInt(12, old.getInt(12));
+        fresh.putInt(16, old.getInt(16));
+        fresh.buffer.force();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index = fresh;
+        closeQuietly(old.channel);
+        indexRebuilds.incrementAndGet();
+        if (indexSaturated && usedSlots < slots) {
+            indexSaturated = false;
+        }
+        log.info("会话索引已重建: 槽位 {} -> {}, 有效 {}, 清除删除标记 {}, 耗时 {} ms", old.slots, slots,
+                previousUsed, previousDeleted, System.currentTimeMillis() - start);
+    }
+
+    private int slotBase(int slot) {
+        return INDEX_HEADER_SIZE + slot * slotSize;
+    }
+
+    /**
+     * 打开索引文件；索引曾扩容时以文件中记录的槽位数为准
+     *
+     * @return 索引是否为新建（需要从第一个日志段重建）
+     */
+    private boolean openIndex(Path file) throws IOException {
+        slotSize = SLOT_HEADER_SIZE + properties.getIndexDepth() * INDEX_ENTRY_SIZE;
+        if (Files.exists(file) && Files.size(file) >= INDEX_HEADER_SIZE) {
+            IndexFile existing = mapIndex(file, (int) ((Files.size(file) - INDEX_HEADER_SIZE) / slotSize));
+            int slots = existing.getInt(4);
+            if (existing.getInt(0) == INDEX_MAGIC && slots >= properties.getIndexSlots()
+                    && existing.getInt(8) == properties.getIndexDepth()
+                    && Files.size(file) == INDEX_HEADER_SIZE + (long) slots * slotSize) {
+                index = existing;
+                for (int slot = 0; slot < slots; slot++) {
+                    int state = existing.getInt(slotBase(slot));
+                    if (state == SLOT_USED) {
+                        usedSlots++;
+                    } else if (state == SLOT_DELETED) {
+                        deletedSlots++;
+                    }
+                }
+                return false;
+            }
+            closeQuietly(existing.channel);
+        }
+        // 索引不存在或配置已变更：清空后从第一个日志段开始重建
+        log.info("重建会话索引: {}", file);
+        Files.deleteIfExists(file);
+        index = mapIndex(file, properties.getIndexSlots());
+        initIndexHeader(index, properties.getIndexSlots());
+        index.putInt(12, segments.firstKey());
+        index.putInt(16, 0);
+        return true;
+    }
+
+    private IndexFile mapIndex(Path file, int slots) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = INDEX_HEADER_SIZE + (long) slots * slotSize;
+        return new IndexFile(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), slots);
+    }
+
+    private void initIndexHeader(IndexFile index, int slots) {
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, slots);
+        index.putInt(8, properties.getIndexDepth());
+    }
+
+    private void writeCheckpoint() {
+        index.putInt(12, active.id);
+        index.putInt(16, active.size);
+    }
+
+    /**
+     * 将检查点之后已写入日志但尚未进入索引的记录补入索引
+     *
+     * @param rebuild 是否为重建索引；重建时压缩搬移的记录是唯一副本，也需要索引。
+     *                搬移的记录位于同一会话较新的记录之后，因此重建时按时间戳排序后再写入索引
+     */
+    private void replayAfterCheckpoint(boolean rebuild) throws IOException {
+        int checkpointSegment = index.getInt(12);
+        int checkpointOffset = index.getInt(16);
+        List<Replay> replays = new ArrayList<>();
+        for (Segment segment : segments.tailMap(checkpointSegment, true).values()) {
+            int offset = segment.id == checkpointSegment ? checkpointOffset : 0;
+            while (offset < segment.size) {
+                Record record = readRecord(segment, offset);
+                if (record == null) {
+                    break;
+                }
+                if (rebuild || (record.type & FLAG_COMPACTED) == 0) {
+                    replays.add(new Replay(record.conversationId, (byte) (record.type & ~FLAG_COMPACTED), segment.id,
+                            offset, record.timestamp));
+                }
+                offset += record.length;
+            }
+        }
+        if (rebuild) {
+            // 稳定排序：旧版本日志中时间戳相同的记录保持日志顺序
+            replays.sort(Comparator.comparingLong(Replay::timestamp));
+        }
+        for (Replay replay : replays) {
+            applyToIndex(replay.conversationId, replay.type, replay.segmentId, replay.offset, replay.timestamp);
+        }
+        writeCheckpoint();
+        if (!replays.isEmpty()) {
+            log.info("会话索引补录记录 {} 条", replays.size());
+        }
+    }
+
+    /**
+     * 扫描日志段：统计记录数；最后一个段还会校验记录并截断末尾未写完的部分
+     */
+    private void scanSegment(Segment segment, boolean verify) throws IOException {
+        long fileSize = segment.channel.size();
+        int offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            int length;
+            if (verify) {
+                Record record = readRecord(segment, offset);
+                if (record == null) {
+                    break;
+                }
+                length = record.length;
+                lastTimestamp = Math.max(lastTimestamp, record.timestamp);
+            } else {
+                header.clear();
+                segment.channel.read(header, offset);
+                if (header.getInt(0) != RECORD_MAGIC) {
+                    break;
+                }
+                length = RECORD_HEADER_SIZE + (header.getShort(17) & 0xFFFF) + header.getInt(19);
+                lastTimestamp = Math.max(lastTimestamp, header.getLong(9));
+            }
+            offset += length;
+            segment.records++;
+        }
+        segment.size = offset;
+        if (verify && offset < fileSize) {
+            segment.channel.truncate(offset);
+            log.warn("会话日志段末尾存在不完整记录，已截断: {}", segment.path);
+        }
+    }
+
+    private Record readRecord(Segment segment, int offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (segment.channel.read(header, offset) < RECORD_HEADER_SIZE || header.getInt(0) != RECORD_MAGIC) {
+            return null;
+        }
+        int idLength = header.getShort(17) & 0xFFFF;
+        int textLength = header.getInt(19);
+        if (textLength < 0 || offset + RECORD_HEADER_SIZE + idLength + textLength > segment.channel.size()) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(idLength + textLength);
+        while (body.hasRemaining()) {
+            if (segment.channel.read(body, offset + RECORD_HEADER_SIZE + body.position()) < 0) {
+                return null;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 8, RECORD_HEADER_SIZE - 8);
+        crc.update(body.array());
+        if ((int) crc.getValue() != header.getInt(4)) {
+            return null;
+        }
+        String conversationId = new String(body.array(), 0, idLength, StandardCharsets.UTF_8);
+        String text = new String(body.array(), idLength, textLength, StandardCharsets.UTF_8);
+        return new Record(header.get(8), header.getLong(9), conversationId, text,
+                RECORD_HEADER_SIZE + idLength + textLength);
+    }
+
+    private static byte[] encode(byte type, String conversationId, String text, long timestamp) {
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + id.length + content.length);
+        buffer.putInt(RECORD_MAGIC);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putLong(timestamp);
+        buffer.putShort((short) id.length);
+        buffer.putInt(content.length);
+        buffer.put(id);
+        buffer.put(content);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, buffer.capacity() - 8);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static Message toMessage(Record record) {
+        return switch (record.type & ~FLAG_COMPACTED) {
+            case TYPE_USER -> new UserMessage(record.text);
+            case TYPE_SYSTEM -> new SystemMessage(record.text);
+            default -> new AssistantMessage(record.text);
+        };
+    }
+
+    /**
+     * 64位FNV-1a哈希
+     */
+    private static long hash(String conversationId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < conversationId.length(); i++) {
+            hash ^= conversationId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void rollSegment() throws IOException {
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path file = Paths.get(properties.getPath()).resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = openSegment(file, id);
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    private Segment openSegment(Path file, int id) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new Segment(id, file, channel);
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.id);
+        closeQuietly(segment.channel);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("删除会话日志段失败: {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int parseSegmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 内存映射的索引文件及其槽位数
+     */
+    private static class IndexFile {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int slots;
+
+        IndexFile(FileChannel channel, MappedByteBuffer buffer, int slots) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.slots = slots;
+        }
+
+        int getInt(int offset) {
+            return buffer.getInt(offset);
+        }
+
+        long getLong(int offset) {
+            return buffer.getLong(offset);
+        }
+
+        void putInt(int offset, int value) {
+            buffer.putInt(offset, value);
+        }
+
+        void putLong(int offset, long value) {
+            buffer.putLong(offset, value);
+        }
+
+        int readVersion(int base) {
+            return (int) INT_VIEW.getAcquire(buffer, base + SLOT_VERSION_OFFSET);
+        }
+
+        /**
+         * 开始更新槽位：版本号变为奇数，读线程见到奇数或版本变化时重读
+         */
+        void beginWrite(int base) {
+            INT_VIEW.setOpaque(buffer, base + SLOT_VERSION_OFFSET, getInt(base + SLOT_VERSION_OFFSET) + 1);
+            VarHandle.storeStoreFence();
+        }
+
+        void endWrite(int base) {
+            INT_VIEW.setRelease(buffer, base + SLOT_VERSION_OFFSET, getInt(base + SLOT_VERSION_OFFSET) + 1);
+        }
+    }
+
+    /**
+     * 某一版本槽位中最近消息的位置（高32位为日志段号，低32位为偏移量）
+     */
+    private record Locations(int version, long[] entries) {
+    }
+
+    /**
+     * 日志段文件
+     */
+    private static class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        volatile int size;
+        volatile int records;
+
+        Segment(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * 待写入的记录
+     */
+    private record Pending(String conversationId, byte type, String text, long timestamp) {
+    }
+
+    /**
+     * 重建索引时待补录的记录位置
+     */
+    private record Replay(String conversationId, byte type, int segmentId, int offset, long timestamp) {
+    }
+
+    /**
+     * 从日志读出的记录
+     */
+    private record Record(byte type, long timestamp, String conversationId, String text, int length) {
+    }
+}
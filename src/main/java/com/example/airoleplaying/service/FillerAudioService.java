@@ -0,0 +1,171 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.FillerProperties;
+import com.example.airoleplaying.model.CharacterProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 填充语音服务
+ * 为每个角色预先合成少量简短的应答音（如"嗯……"、"让我想想"）并常驻内存。
+ * 用户说完话后，如预计该角色的首段真实语音会超过目标时延，立即播放一段填充语音以掩盖LLM思考时间，
+ * 并统计感知时延与实际时延。首段语音时延按角色分别估计，不同角色的发音人和提示词长度差异较大。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FillerAudioService {
+    private final FillerProperties properties;
+    private final CharacterService characterService;
+    private final SpeechAiService speechAiService;
+
+    // 角色ID -> 填充语音片段
+    private final ConcurrentHashMap<String, List<byte[]>> clips = new ConcurrentHashMap<>();
+
+    // 角色ID -> 首段真实语音时延的指数滑动平均（毫秒）
+    private final ConcurrentHashMap<String, Double> estimatedFirstAudioMs = new ConcurrentHashMap<>();
+
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong fillersPlayed = new AtomicLong();
+    private final AtomicLong totalActualMs = new AtomicLong();
+    private final AtomicLong totalPerceivedMs = new AtomicLong();
+
+    /**
+     * 应用启动完成后合成各角色的填充语音
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        characterService.getAllProfiles().forEach(this::renderClips);
+    }
+
+    /**
+     * 角色配置变更时重新合成该角色的填充语音
+     */
+    @EventListener
+    public void onCharacterProfileChanged(CharacterProfileChangedEvent event) {
+        clips.remove(event.characterId());
+        // 发音人可能已变更，重新估计首段语音时延
+        estimatedFirstAudioMs.remove(event.characterId());
+        if (properties.isEnabled() && event.profile() != null) {
+            renderClips(event.characterId(), event.profile());
+        }
+    }
+
+    /**
+     * 判断本轮是否应播放填充语音：角色已启用且预计该角色的首段语音会错过目标时延
+     */
+    public boolean shouldPlayFiller(String characterId) {
+        if (!isEnabledFor(characterId)) {
+            return false;
+        }
+        return estimatedFirstAudioMs(characterId) > properties.getFirstAudioDeadline().toMillis();
+    }
+
+    /**
+     * 随机选取一段填充语音，未就绪返回null
+     */
+    public byte[] pickFiller(String characterId) {
+        List<byte[]> characterClips = clips.get(characterId);
+        if (characterClips == null || characterClips.isEmpty()) {
+            return null;
+        }
+        return characterClips.get(ThreadLocalRandom.current().nextInt(characterClips.size()));
+    }
+
+    /**
+     * 记录一轮对话的时延
+     *
+     * @param characterId 本轮的角色ID
+     * @param actualMs 从用户说完到首段真实语音的时延
+     * @param perceivedMs 从用户说完到用户听到任何声音的时延
+     * @param fillerPlayed 本轮是否播放了填充语音
+     */
+    public void recordTurn(String characterId, long actualMs, long perceivedMs, boolean fillerPlayed) {
+        turns.incrementAndGet();
+        totalActualMs.addAndGet(actualMs);
+        totalPerceivedMs.addAndGet(perceivedMs);
+        if (fillerPlayed) {
+            fillersPlayed.incrementAndGet();
+        }
+        if (characterId == null) {
+            return;
+        }
+        double weight = properties.getEwmaWeight();
+        estimatedFirstAudioMs.merge(characterId, (double) actualMs,
+                (previous, sample) -> weight * sample + (1 - weight) * previous);
+    }
+
+    /**
+     * 获取填充语音统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long turnCount = turns.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("charactersReady", clips.size());
+        stats.put("firstAudioDeadlineMs", properties.getFirstAudioDeadline().toMillis());
+        Map<String, Object> estimates = new HashMap<>();
+        estimatedFirstAudioMs.forEach((characterId, estimate) -> estimates.put(characterId, Math.round(estimate)));
+        stats.put("initialEstimateMs", properties.getInitialEstimate().toMillis());
+        stats.put("estimatedFirstAudioMs", estimates);
+        stats.put("turns", turnCount);
+        stats.put("fillersPlayed", fillersPlayed.get());
+        stats.put("avgActualLatencyMs", turnCount == 0 ? 0 : totalActualMs.get() / turnCount);
+        stats.put("avgPerceivedLatencyMs", turnCount == 0 ? 0 : totalPerceivedMs.get() / turnCount);
+        return stats;
+    }
+
+    /**
+     * 角色的首段语音时延估计，尚无样本时使用初始估计
+     */
+    private double estimatedFirstAudioMs(String characterId) {
+        Double estimate = characterId == null ? null : estimatedFirstAudioMs.get(characterId);
+        return estimate == null ? properties.getInitialEstimate().toMillis() : estimate;
+    }
+
+    private boolean isEnabledFor(String characterId) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        FillerProperties.CharacterFiller override = properties.getCharacters().get(characterId);
+        return override == null || override.getEnabled() == null || override.getEnabled();
+    }
+
+    private List<String> phrasesFor(String characterId) {
+        FillerProperties.CharacterFiller override = properties.getCharacters().get(characterId);
+        if (override != null && override.getPhrases() != null && !override.getPhrases().isEmpty()) {
+            return override.getPhrases();
+        }
+        return properties.getPhrases();
+    }
+
+    private void renderClips(String characterId, CharacterProfile profile) {
+        if (profile.getEnabled() == null || !profile.getEnabled() || !isEnabledFor(characterId)) {
+            return;
+        }
+        List<byte[]> characterClips = clips.computeIfAbsent(characterId, k -> new CopyOnWriteArrayList<>());
+        for (String phrase : phrasesFor(characterId)) {
+            speechAiService.textToSpeech(phrase, profile.getVoice()).whenComplete((audio, error) -> {
+                if (error != null) {
+                    log.warn("填充语音合成失败: {} / {}: {}", characterId, phrase, error.getMessage());
+                } else {
+                    characterClips.add(audio);
+                }
+            });
+        }
+    }
+}
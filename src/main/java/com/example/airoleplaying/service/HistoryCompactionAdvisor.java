@@ -0,0 +1,275 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.HistoryCompactionProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话历史压缩 Advisor
+ * 位于 MessageChatMemoryAdvisor 之后：会话历史超过token预算时，在后台将较早的轮次折叠为滚动摘要，
+ * 不阻塞当前请求；后续请求只发送"摘要 + 最近轮次"，使提示词长度基本恒定。
+ * 摘要记录其覆盖到的消息序号，会话被清除或从记忆中淘汰时一并丢弃。
+ */
+@Component
+@Slf4j
+public class HistoryCompactionAdvisor implements BaseAdvisor {
+    private static final String SUMMARY_PREFIX = "以下是你与用户此前对话的摘要，请在后续回复中保持一致：\n";
+
+    private final HistoryCompactionProperties properties;
+    private final BoundedConversationMemory conversationMemory;
+    private final ChatClient summaryClient;
+    private final ThreadPoolExecutor compactionExecutor;
+
+    // 会话ID -> 滚动摘要
+    private final ConcurrentHashMap<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    // 正在压缩的会话 -> 本次压缩的标记，会话被清除后进行中的压缩结果不再写入
+    private final ConcurrentHashMap<String, Object> compacting = new ConcurrentHashMap<>();
+
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong foldedMessages = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong totalHistoryTokensSent = new AtomicLong();
+
+    public HistoryCompactionAdvisor(HistoryCompactionProperties properties, BoundedConversationMemory conversationMemory,
+                                    ChatModel chatModel) {
+        this.properties = properties;
+        this.conversationMemory = conversationMemory;
+        conversationMemory.addRemovalListener(this::forget);
+        // 摘要请求不经过记忆和压缩 Advisor
+        this.summaryClient = ChatClient.create(chatModel);
+        int threads = Math.max(1, properties.getWorkerThreads());
+        this.compactionExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        compactionExecutor.shutdownNow();
+    }
+
+    @Override
+    public int getOrder() {
+        // 在记忆 Advisor 注入历史之后执行
+        return Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER + 1;
+    }
+
+    @Override
+    public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
+        Object conversationId = chatClientRequest.context().get(ChatMemory.CONVERSATION_ID);
+        if (!properties.isEnabled() || conversationId == null
+                || ChatMemory.DEFAULT_CONVERSATION_ID.equals(conversationId)) {
+            return chatClientRequest;
+        }
+        String id = conversationId.toString();
+        List<Message> messages = chatClientRequest.prompt().getInstructions();
+        BoundedConversationMemory.HistoryWindow window = conversationMemory.getWindow(id);
+        // 记忆不保存系统消息，提示词开头的系统提示词不属于历史
+        int lead = 0;
+        while (lead < messages.size() - 1 && messages.get(lead) instanceof SystemMessage) {
+            lead++;
+        }
+        int offset = historyOffset(window, messages, lead);
+        int historyEnd = offset < 0 ? lead : historyEnd(window, messages, offset);
+        List<Message> history = messages.subList(lead, historyEnd);
+        // 提示词中第一条历史消息的序号
+        long historyFirstIndex = offset < 0 ? 0 : window.firstIndex() - (offset - lead);
+
+        // 用已有摘要替换被折叠的历史；摘要覆盖范围之前的消息已被记忆裁剪时，全部历史都更新
+        Summary summary = summaries.get(id);
+        int recentFrom = summary == null ? 0
+                : (int) Math.min(history.size(), Math.max(0, summary.foldedUpTo - historyFirstIndex));
+        List<Message> recent = history.subList(recentFrom, history.size());
+        int recentTokens = tokens(recent);
+        requests.incrementAndGet();
+        totalHistoryTokensSent.addAndGet(recentTokens + (summary == null ? 0 : summary.tokens));
+
+        if (recentTokens > properties.getTriggerTokens()) {
+            scheduleCompaction(id, summary, recent, historyFirstIndex + recentFrom);
+        }
+        if (summary == null) {
+            return chatClientRequest;
+        }
+        List<Message> compacted = new ArrayList<>(messages.size() - history.size() + recent.size() + 1);
+        // 部分模型接口只接受一条系统消息，摘要并入开头的系统提示词
+        StringBuilder system = new StringBuilder();
+        for (Message message : messages.subList(0, lead)) {
+            system.append(message.getText()).append("\n\n");
+        }
+        system.append(SUMMARY_PREFIX).append(summary.text);
+        compacted.add(new SystemMessage(system.toString()));
+        compacted.addAll(recent);
+        compacted.addAll(messages.subList(historyEnd, messages.size()));
+        Prompt prompt = new Prompt(compacted, chatClientRequest.prompt().getOptions());
+        return chatClientRequest.mutate().prompt(prompt).build();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
+        return chatClientResponse;
+    }
+
+    /**
+     * 获取压缩统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long requestCount = requests.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("triggerTokens", properties.getTriggerTokens());
+        stats.put("summaries", summaries.size());
+        stats.put("compacting", compacting.size());
+        stats.put("compactions", compactions.get());
+        stats.put("failures", failures.get());
+        stats.put("foldedMessages", foldedMessages.get());
+        stats.put("avgHistoryTokensSent", requestCount == 0 ? 0 : totalHistoryTokensSent.get() / requestCount);
+        return stats;
+    }
+
+    /**
+     * 定位记忆中第一条消息在提示词中的位置
+     * 记忆 Advisor 注入历史后写入当前用户消息时可能裁剪了最早的消息，因此记忆的第一条消息可能位于提示词中靠后的位置。
+     * 记忆与提示词中的历史是同一批消息对象，按引用比较，内容重复的消息（如多次出现的"好的"）不会错位
+     *
+     * @return 位置，记忆为空或提示词中没有记忆中的消息时返回-1
+     */
+    private static int historyOffset(BoundedConversationMemory.HistoryWindow window, List<Message> messages, int from) {
+        if (window.messages().isEmpty()) {
+            return -1;
+        }
+        Message first = window.messages().get(0);
+        for (int i = from; i < messages.size() - 1; i++) {
+            if (messages.get(i) == first) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 计算提示词中会话历史的结束位置（不含）
+     * 记忆 Advisor 将历史放在请求消息之前，且当前用户消息已写入记忆，因此最后一条消息不计入历史
+     */
+    private static int historyEnd(BoundedConversationMemory.HistoryWindow window, List<Message> messages, int offset) {
+        List<Message> stored = window.messages();
+        int limit = Math.min(stored.size() + offset, messages.size() - 1);
+        int size = offset;
+        while (size < limit && stored.get(size - offset) == messages.get(size)) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 会话被清除或淘汰：丢弃摘要，进行中的压缩结果不再写入
+     */
+    private void forget(String conversationId) {
+        compacting.remove(conversationId);
+        summaries.remove(conversationId);
+    }
+
+    /**
+     * 后台将较早的轮次折叠进摘要，仅保留最近 keepRecentTokens 的消息
+     */
+    private void scheduleCompaction(String conversationId, Summary previous, List<Message> recent, long recentFirstIndex) {
+        int keepFrom = recent.size();
+        int kept = 0;
+        while (keepFrom > 0 && kept + tokens(recent.get(keepFrom - 1)) <= properties.getKeepRecentTokens()) {
+            keepFrom--;
+            kept += tokens(recent.get(keepFrom));
+        }
+        Object token = new Object();
+        if (keepFrom == 0 || compacting.putIfAbsent(conversationId, token) != null) {
+            return;
+        }
+        List<Message> toFold = List.copyOf(recent.subList(0, keepFrom));
+        long foldedUpTo = recentFirstIndex + keepFrom;
+        try {
+            compactionExecutor.execute(() -> {
+                try {
+                    String text = summarize(previous == null ? null : previous.text, toFold);
+                    Summary summary = new Summary(text, foldedUpTo, TokenEstimator.estimate(text));
+                    // 压缩期间会话被清除或淘汰时丢弃结果
+                    summaries.compute(conversationId,
+                            (k, current) -> compacting.get(conversationId) == token ? summary : current);
+                    compactions.incrementAndGet();
+                    foldedMessages.addAndGet(toFold.size());
+                    log.debug("会话历史已压缩: {}, 折叠 {} 条消息", conversationId, toFold.size());
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("会话历史压缩失败: {}: {}", conversationId, e.getMessage());
+                } finally {
+                    compacting.remove(conversationId, token);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compacting.remove(conversationId, token);
+            log.debug("压缩队列已满，跳过本次压缩: {}", conversationId);
+        }
+    }
+
+    private String summarize(String previousSummary, List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        if (previousSummary != null) {
+            transcript.append("已有摘要：").append(previousSummary).append("\n\n");
+        }
+        transcript.append("新增对话：\n");
+        for (Message message : messages) {
+            String role = message.getMessageType() == MessageType.USER ? "用户" : "助手";
+            transcript.append(role).append("：").append(message.getText()).append('\n');
+        }
+        return summaryClient.prompt()
+                .system(String.format("你是对话摘要助手。请将已有摘要和新增对话合并为一段不超过%d字的中文摘要，"
+                        + "保留人物身份、关键事实、用户偏好和尚未结束的话题，只输出摘要本身。", properties.getSummaryMaxChars()))
+                .user(transcript.toString())
+                .call()
+                .content();
+    }
+
+    private static int tokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += tokens(message);
+        }
+        return total;
+    }
+
+    private static int tokens(Message message) {
+        return TokenEstimator.estimate(message.getText());
+    }
+
+    /**
+     * 滚动摘要
+     *
+     * @param text 摘要文本
+     * @param foldedUpTo 摘要覆盖的消息序号上界（不含），序号由 BoundedConversationMemory 分配
+     * @param tokens 摘要的token估算
+     */
+    private record Summary(String text, long foldedUpTo, int tokens) {
+    }
+}
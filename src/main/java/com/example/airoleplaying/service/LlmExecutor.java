@@ -0,0 +1,126 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.LlmExecutorProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * LLM调用线程池
+ * 阻塞的LLM调用统一在专用的有界线程池中执行，请求线程不再等待上游；
+ * 队列满时立即拒绝，超过接口超时时间的调用被中断。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LlmExecutor {
+    private final LlmExecutorProperties properties;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> timeouts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, properties.getThreads());
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "llm-executor-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在LLM线程池中执行调用
+     *
+     * @param endpoint 接口名称，用于查找超时时间和统计
+     * @param call 阻塞的LLM调用
+     * @return 调用结果；队列满时以 RejectedExecutionException 失败，超时以 TimeoutException 失败，取消时中断调用
+     */
+    public <T> CompletableFuture<T> submit(String endpoint, Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            log.warn("LLM线程池已满，拒绝请求: {}", endpoint);
+            result.completeExceptionally(new RejectedExecutionException("AI服务繁忙，请稍后重试"));
+            return result;
+        }
+        submitted.incrementAndGet();
+        Duration timeout = timeout(endpoint);
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                // 调用方取消时中断仍在执行或排队的调用
+                task.cancel(true);
+            } else if (error instanceof TimeoutException) {
+                // 超时后中断仍在执行或排队的调用
+                task.cancel(true);
+                timeouts.computeIfAbsent(endpoint, k -> new AtomicLong()).incrementAndGet();
+                log.warn("LLM调用超时: {} ({}ms)", endpoint, timeout.toMillis());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 获取接口的超时时间
+     */
+    public Duration timeout(String endpoint) {
+        return properties.getTimeouts().getOrDefault(endpoint, properties.getDefaultTimeout());
+    }
+
+    /**
+     * 获取线程池统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> timeoutCounts = new HashMap<>();
+        timeouts.forEach((endpoint, count) -> timeoutCounts.put(endpoint, count.get()));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", properties.getThreads());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", properties.getQueueCapacity());
+        stats.put("submitted", submitted.get());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejected.get());
+        stats.put("timeouts", timeoutCounts);
+        return stats;
+    }
+}
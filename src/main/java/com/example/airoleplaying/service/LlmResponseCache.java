@@ -0,0 +1,260 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.LlmCacheProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * LLM回复缓存服务
+ * 以 (角色, 规范化系统提示词, 规范化用户文本, 模型参数) 为键进行精确匹配缓存，
+ * 支持TTL、容量上限、按角色失效，以及以Flux形式回放缓存内容供流式接口使用。
+ * 未命中时经由 RequestCoalescer 合并相同的并发请求。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LlmResponseCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\p{P}\\s~]+$");
+    private static final String NO_CHARACTER = "-";
+
+    private final LlmCacheProperties properties;
+    private final Environment environment;
+    private final RequestCoalescer requestCoalescer;
+
+    // 按访问顺序排列，便于LRU淘汰
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private String defaultModelOptions;
+
+    @PostConstruct
+    public void init() {
+        // 默认模型参数参与缓存键，修改配置后旧缓存自然失效
+        defaultModelOptions = String.join("|",
+                environment.getProperty("spring.ai.dashscope.chat.options.model", ""),
+                environment.getProperty("spring.ai.dashscope.chat.options.temperature", ""),
+                environment.getProperty("spring.ai.dashscope.chat.options.max-tokens", ""),
+                environment.getProperty("spring.ai.dashscope.chat.options.top-p", ""));
+        log.info("LLM回复缓存{}，TTL: {}, 最大条目数: {}",
+                properties.isEnabled() ? "已启用" : "未启用", properties.getTtl(), properties.getMaxEntries());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 计算缓存键（使用默认模型参数）
+     */
+    public String key(String characterId, String systemPrompt, String userText) {
+        return key(characterId, systemPrompt, userText, defaultModelOptions);
+    }
+
+    /**
+     * 默认模型参数叠加回复token上限，用于区分不同渠道的缓存
+     */
+    public String modelOptions(int maxTokens) {
+        return defaultModelOptions + "|maxTokens=" + maxTokens;
+    }
+
+    /**
+     * 计算缓存键
+     * 键以角色ID为前缀，便于按角色失效
+     */
+    public String key(String characterId, String systemPrompt, String userText, String modelOptions) {
+        String raw = String.join("\u0001", normalize(systemPrompt), normalize(userText),
+                modelOptions == null ? "" : modelOptions);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String hash = HexFormat.of().formatHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+            return (characterId == null ? NO_CHARACTER : characterId) + ":" + hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 规范化文本：全角转半角、小写、合并空白、去除末尾标点
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return TRAILING_PUNCTUATION.matcher(normalized).replaceAll("");
+    }
+
+    /**
+     * 查询缓存，未命中或已过期返回null
+     */
+    public synchronized String get(String key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAt > properties.getTtl().toMillis()) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(String key, String response) {
+        if (!properties.isEnabled() || response == null || response.isBlank()
+                || response.length() > properties.getMaxResponseChars()) {
+            return;
+        }
+        entries.put(key, new Entry(response, System.currentTimeMillis()));
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (entries.size() > properties.getMaxEntries() && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 同步调用：命中则直接返回，否则（合并后）调用上游并写入缓存
+     */
+    public String getOrCall(String key, Supplier<String> call) {
+        String cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return requestCoalescer.execute(key, () -> {
+            String response = call.get();
+            put(key, response);
+            return response;
+        });
+    }
+
+    /**
+     * 流式调用：命中则回放缓存内容，否则（合并后）订阅上游流并在完成后写入缓存
+     */
+    public Flux<String> getOrStream(String key, Supplier<Flux<String>> stream) {
+        return Flux.defer(() -> {
+            String cached = get(key);
+            if (cached != null) {
+                return replay(cached);
+            }
+            return requestCoalescer.stream(key, () -> {
+                StringBuilder content = new StringBuilder();
+                return stream.get()
+                        .doOnNext(content::append)
+                        .doOnComplete(() -> put(key, content.toString()));
+            });
+        });
+    }
+
+    /**
+     * 将缓存的回复切分为小片段，以Flux形式回放
+     */
+    public Flux<String> replay(String response) {
+        int chunkChars = Math.max(1, properties.getReplayChunkChars());
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < response.length()) {
+            int end = Math.min(response.length(), start + chunkChars);
+            // 避免拆开代理对
+            if (end < response.length() && Character.isHighSurrogate(response.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(response.substring(start, end));
+            start = end;
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    /**
+     * 使指定角色的全部缓存失效
+     */
+    public synchronized int invalidateCharacter(String characterId) {
+        String prefix = (characterId == null ? NO_CHARACTER : characterId) + ":";
+        int before = entries.size();
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+        int removed = before - entries.size();
+        invalidations.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * 角色配置变更时清除该角色的缓存
+     */
+    @EventListener
+    public void onCharacterProfileChanged(CharacterProfileChangedEvent event) {
+        int removed = invalidateCharacter(event.characterId());
+        if (removed > 0) {
+            log.info("角色配置变更，清除LLM回复缓存: {} ({} 条)", event.characterId(), removed);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        long total = hits.get() + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", properties.getMaxEntries());
+        stats.put("ttlSeconds", properties.getTtl().toSeconds());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits.get() / total);
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private record Entry(String response, long createdAt) {
+    }
+}
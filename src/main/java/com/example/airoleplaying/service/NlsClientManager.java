@@ -0,0 +1,280 @@
+package com.example.airoleplaying.service;
+
+import com.alibaba.nls.client.AccessToken;
+import com.alibaba.nls.client.protocol.NlsClient;
+import com.example.airoleplaying.config.AlibabaCloudProperties;
+import com.example.airoleplaying.config.NlsClientPoolProperties;
+import com.example.airoleplaying.config.NlsTokenProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阿里云语音服务客户端管理
+ * 为每个候选网关维护多个 NlsClient 分片，每个分片有独立的网络I/O线程，新的识别和合成连接使用
+ * {@link NlsGatewaySelector} 选出的网关，按最少连接数或会话ID哈希分配到该网关的分片，
+ * 避免所有连接的回调挤在同一组I/O线程上。
+ * 在访问令牌过期前（带随机抖动）于后台刷新令牌，并用新令牌创建新的一组分片。
+ * 切换后新的连接使用新分片，已建立的连接继续在旧分片上完成，
+ * 旧分片在连接全部释放或保留 drainTimeout 后关闭，切换过程不中断服务。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NlsClientManager {
+    private final AlibabaCloudProperties alibabaCloudProperties;
+    private final NlsTokenProperties properties;
+    private final NlsClientPoolProperties poolProperties;
+    private final NlsGatewaySelector gatewaySelector;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "nls-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Shard> drainingShards = ConcurrentHashMap.newKeySet();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    // 网关地址 -> 该网关的分片
+    private volatile Map<String, List<Shard>> shards = Map.of();
+    private volatile long tokenExpireTime;
+    private volatile long lastRefreshTime;
+    private volatile long nextRefreshTime;
+
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            throw new RuntimeException("获取阿里云语音服务访问令牌失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        drainingShards.forEach(Shard::shutdown);
+        drainingShards.clear();
+        shards.values().forEach(endpointShards -> endpointShards.forEach(Shard::shutdown));
+    }
+
+    /**
+     * 为一个识别或合成连接分配客户端，连接关闭后需调用 {@link Lease#release()}
+     *
+     * @param key 会话ID，按哈希分配时同一会话固定到同一分片；可为null
+     */
+    public Lease acquire(String key) {
+        Map<String, List<Shard>> all = shards;
+        List<Shard> current = all.get(gatewaySelector.current());
+        if (current == null) {
+            current = all.values().iterator().next();
+        }
+        Shard shard;
+        if (key != null && poolProperties.getSelection() == NlsClientPoolProperties.Selection.HASH) {
+            shard = current.get(Math.floorMod(key.hashCode(), current.size()));
+        } else {
+            shard = current.get(0);
+            for (Shard candidate : current) {
+                if (candidate.activeStreams.get() < shard.activeStreams.get()) {
+                    shard = candidate;
+                }
+            }
+        }
+        shard.activeStreams.incrementAndGet();
+        shard.totalStreams.incrementAndGet();
+        return new Lease(shard);
+    }
+
+    /**
+     * 刷新访问令牌并切换到新的一组分片，之后安排下一次刷新
+     */
+    private void refresh() throws Exception {
+        AccessToken accessToken = new AccessToken(
+                alibabaCloudProperties.getAccessKeyId(),
+                alibabaCloudProperties.getAccessKeySecret()
+        );
+        accessToken.apply();
+        String token = accessToken.getToken();
+        if (token == null || token.isEmpty()) {
+            throw new Exception("获取访问令牌失败");
+        }
+        Map<String, List<Shard>> previous = shards;
+        int size = Math.max(1, poolProperties.getSize());
+        long generation = refreshCount.incrementAndGet();
+        Map<String, List<Shard>> created = new LinkedHashMap<>();
+        for (String endpoint : gatewaySelector.endpoints()) {
+            List<Shard> endpointShards = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                endpointShards.add(new Shard(endpoint, i, generation, new NlsClient(endpoint, token)));
+            }
+            created.put(endpoint, List.copyOf(endpointShards));
+        }
+        shards = created;
+        tokenExpireTime = accessToken.getExpireTime() * 1000;
+        lastRefreshTime = System.currentTimeMillis();
+        previous.values().forEach(endpointShards -> endpointShards.forEach(this::retire));
+        long jitter = properties.getJitter().toMillis() > 0
+                ? ThreadLocalRandom.current().nextLong(properties.getJitter().toMillis()) : 0;
+        long delay = tokenExpireTime - properties.getRefreshAhead().toMillis() - jitter - lastRefreshTime;
+        schedule(Math.max(delay, properties.getRetryInterval().toMillis()));
+        log.info("阿里云语音服务访问令牌已刷新，{} 个网关 x {} 个客户端分片，过期时间: {}", created.size(), size, Instant.ofEpochMilli(tokenExpireTime));
+    }
+
+    private void schedule(long delayMillis) {
+        nextRefreshTime = System.currentTimeMillis() + delayMillis;
+        scheduler.schedule(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                refreshFailures.incrementAndGet();
+                log.error("访问令牌刷新失败，{} 后重试: {}", properties.getRetryInterval(), e.getMessage(), e);
+                schedule(properties.getRetryInterval().toMillis());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 旧分片不再分配新连接，已有连接全部释放后关闭，最长保留 drainTimeout
+     */
+    private void retire(Shard shard) {
+        shard.retired = true;
+        drainingShards.add(shard);
+        scheduler.schedule(() -> closeDrained(shard), properties.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void closeDrained(Shard shard) {
+        if (drainingShards.remove(shard)) {
+            shard.shutdown();
+            log.debug("旧的语音服务客户端分片已关闭: {}-{}, 剩余连接 {}", shard.generation, shard.index,
+                    shard.activeStreams.get());
+        }
+    }
+
+    /**
+     * 客户端分片统计：各分片的连接数与回调时延，以及令牌刷新状态
+     */
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> shardStats = new ArrayList<>();
+        shards.values().forEach(endpointShards -> endpointShards.forEach(shard -> shardStats.add(shard.getStatistics())));
+        List<Map<String, Object>> drainingStats = new ArrayList<>();
+        drainingShards.forEach(shard -> drainingStats.add(shard.getStatistics()));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("selection", poolProperties.getSelection());
+        stats.put("gateway", gatewaySelector.current());
+        stats.put("shards", shardStats);
+        stats.put("drainingShards", drainingStats);
+        stats.put("tokenExpireTime", tokenExpireTime);
+        stats.put("lastRefreshTime", lastRefreshTime);
+        stats.put("nextRefreshTime", nextRefreshTime);
+        stats.put("refreshCount", refreshCount.get());
+        stats.put("refreshFailures", refreshFailures.get());
+        return stats;
+    }
+
+    /**
+     * 单个客户端分片
+     */
+    private final class Shard {
+        final String endpoint;
+        final int index;
+        final long generation;
+        final NlsClient client;
+        final AtomicInteger activeStreams = new AtomicInteger();
+        final AtomicLong totalStreams = new AtomicLong();
+        final AtomicLong startCount = new AtomicLong();
+        final AtomicLong startLatencyTotal = new AtomicLong();
+        final AtomicLong startLatencyMax = new AtomicLong();
+        volatile boolean retired;
+
+        Shard(String endpoint, int index, long generation, NlsClient client) {
+            this.endpoint = endpoint;
+            this.index = index;
+            this.generation = generation;
+            this.client = client;
+        }
+
+        void release() {
+            if (activeStreams.decrementAndGet() == 0 && retired) {
+                closeDrained(this);
+            }
+        }
+
+        void recordStartLatency(long latencyMs) {
+            startCount.incrementAndGet();
+            startLatencyTotal.addAndGet(latencyMs);
+            startLatencyMax.accumulateAndGet(latencyMs, Math::max);
+        }
+
+        void shutdown() {
+            try {
+                client.shutdown();
+            } catch (Exception e) {
+                log.warn("关闭语音服务客户端失败: {}", e.getMessage());
+            }
+        }
+
+        Map<String, Object> getStatistics() {
+            long starts = startCount.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shard", generation + "-" + index);
+            stats.put("endpoint", endpoint);
+            stats.put("activeStreams", activeStreams.get());
+            stats.put("totalStreams", totalStreams.get());
+            stats.put("avgStartLatencyMs", starts == 0 ? 0 : startLatencyTotal.get() / starts);
+            stats.put("maxStartLatencyMs", startLatencyMax.get());
+            return stats;
+        }
+    }
+
+    /**
+     * 一个连接对客户端分片的占用
+     */
+    public static final class Lease {
+        private final Shard shard;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Shard shard) {
+            this.shard = shard;
+        }
+
+        public NlsClient client() {
+            return shard.client;
+        }
+
+        /**
+         * 记录连接建立时延（从调用 start 到服务端确认开始），反映分片I/O线程的繁忙程度
+         *
+         * @param startTime 调用 start 的时间（毫秒）
+         */
+        public void started(long startTime) {
+            shard.recordStartLatency(System.currentTimeMillis() - startTime);
+        }
+
+        /**
+         * 释放占用，可重复调用
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                shard.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.AlibabaCloudProperties;
+import com.example.airoleplaying.config.NlsGatewayProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语音服务网关选择
+ * 后台定期探测各候选网关的握手时延（TCP连接，wss 另加TLS握手）和错误率，
+ * 新的识别和合成连接使用最快的可用网关。为避免来回切换，候选网关需连续多次
+ * 比当前网关快出 switchMargin 以上才切换；当前网关不可用时立即切换。
+ * 探测只需网关地址可连接，可用本地的 ws:// 替身地址测试。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NlsGatewaySelector {
+    private final AlibabaCloudProperties alibabaCloudProperties;
+    private final NlsGatewayProperties properties;
+
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "nls-gateway-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong switchCount = new AtomicLong();
+    private List<Endpoint> endpoints;
+    private volatile Endpoint current;
+    private Endpoint candidate;
+    private int candidateWins;
+
+    @PostConstruct
+    public void init() {
+        Set<String> urls = new LinkedHashSet<>(properties.getEndpoints());
+        if (urls.isEmpty()) {
+            urls.add(alibabaCloudProperties.getAsr().getUrl());
+            urls.add(alibabaCloudProperties.getTts().getUrl());
+        }
+        List<Endpoint> configured = new ArrayList<>();
+        urls.forEach(url -> configured.add(new Endpoint(url)));
+        endpoints = List.copyOf(configured);
+        current = endpoints.get(0);
+        long interval = properties.getProbeInterval().toMillis();
+        prober.scheduleWithFixedDelay(this::probeAll, 0, interval, TimeUnit.MILLISECONDS);
+        log.info("语音服务网关: {}，当前: {}", urls, current.url);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        prober.shutdownNow();
+    }
+
+    /**
+     * 全部候选网关地址，顺序与配置一致
+     */
+    public List<String> endpoints() {
+        return endpoints.stream().map(endpoint -> endpoint.url).toList();
+    }
+
+    /**
+     * 新连接应使用的网关地址
+     */
+    public String current() {
+        return current.url;
+    }
+
+    private void probeAll() {
+        try {
+            endpoints.forEach(this::probe);
+            select();
+        } catch (Exception e) {
+            log.warn("网关探测失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 探测一次握手时延并更新加权平均
+     * 加权平均以第一次成功的时延为初值；失败按探测超时计入时延
+     */
+    private void probe(Endpoint endpoint) {
+        double weight = properties.getEwmaWeight();
+        int timeout = (int) properties.getProbeTimeout().toMillis();
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(endpoint.host, endpoint.port), timeout);
+            if (endpoint.secure) {
+                socket.setSoTimeout(timeout);
+                try (SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, endpoint.host, endpoint.port, true)) {
+                    ssl.startHandshake();
+                }
+            }
+            double latency = (System.nanoTime() - start) / 1_000_000.0;
+            endpoint.latencyMs = endpoint.successes == 0 ? latency : weight * latency + (1 - weight) * endpoint.latencyMs;
+            endpoint.errorRate = (1 - weight) * endpoint.errorRate;
+            endpoint.successes++;
+        } catch (Exception e) {
+            endpoint.latencyMs = endpoint.successes == 0 ? timeout : weight * timeout + (1 - weight) * endpoint.latencyMs;
+            endpoint.errorRate = weight + (1 - weight) * endpoint.errorRate;
+            endpoint.failures++;
+            log.debug("网关探测失败: {}: {}", endpoint.url, e.getMessage());
+        }
+        endpoint.probes++;
+    }
+
+    /**
+     * 按时延选择网关，带滞后：当前网关可用时，候选网关需连续 switchAfter 次明显更快才切换
+     */
+    private void select() {
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy() && (best == null || endpoint.latencyMs < best.latencyMs)) {
+                best = endpoint;
+            }
+        }
+        if (best == null || best == current) {
+            candidate = null;
+            candidateWins = 0;
+            return;
+        }
+        if (!current.isHealthy()) {
+            switchTo(best, "当前网关不可用");
+            return;
+        }
+        if (best.latencyMs >= current.latencyMs * (1 - properties.getSwitchMargin())) {
+            candidate = null;
+            candidateWins = 0;
+            return;
+        }
+        candidateWins = best == candidate ? candidateWins + 1 : 1;
+        candidate = best;
+        if (candidateWins >= properties.getSwitchAfter()) {
+            switchTo(best, "候选网关持续更快");
+        }
+    }
+
+    private void switchTo(Endpoint next, String reason) {
+        log.info("切换语音服务网关（{}）: {} ({} ms) -> {} ({} ms)", reason, current.url,
+                Math.round(current.latencyMs), next.url, Math.round(next.latencyMs));
+        current = next;
+        candidate = null;
+        candidateWins = 0;
+        switchCount.incrementAndGet();
+    }
+
+    /**
+     * 各网关的探测统计
+     */
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> endpointStats = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("url", endpoint.url);
+            stats.put("latencyMs", Math.round(endpoint.latencyMs));
+            stats.put("errorRate", Math.round(endpoint.errorRate * 1000) / 1000.0);
+            stats.put("healthy", endpoint.isHealthy());
+            stats.put("probes", endpoint.probes);
+            stats.put("successes", endpoint.successes);
+            stats.put("failures", endpoint.failures);
+            endpointStats.add(stats);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("current", current.url);
+        stats.put("switches", switchCount.get());
+        stats.put("endpoints", endpointStats);
+        return stats;
+    }
+
+    /**
+     * 单个候选网关的探测状态，仅由探测线程写入
+     */
+    private final class Endpoint {
+        final String url;
+        final String host;
+        final int port;
+        final boolean secure;
+        volatile double latencyMs;
+        volatile double errorRate;
+        volatile long probes;
+        volatile long successes;
+        volatile long failures;
+
+        Endpoint(String url) {
+            URI uri = URI.create(url);
+            this.url = url;
+            this.host = uri.getHost();
+            this.secure = "wss".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+            this.port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+        }
+
+        /**
+         * 从未探测成功的网关不可用
+         */
+        boolean isHealthy() {
+            return successes > 0 && errorRate <= properties.getMaxErrorRate();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.airoleplaying.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PCM音频分段工具（16位单声道小端）
+ * 在目标切分点附近寻找能量最低的帧作为切分点，避免切断语音。
+ */
+public final class PcmSegmenter {
+    // 能量计算的帧长：20ms
+    private static final int FRAMES_PER_SECOND = 50;
+
+    private PcmSegmenter() {
+    }
+
+    /**
+     * 切分音频
+     *
+     * @param pcm 音频数据
+     * @param from 音频数据起始偏移
+     * @param to 音频数据结束偏移
+     * @param sampleRate 采样率
+     * @param segmentDuration 分段目标时长
+     * @param searchWindow 在目标切分点前后搜索静音的范围
+     * @return 各分段的 [起始偏移, 结束偏移)，按顺序排列
+     */
+    public static List<int[]> split(byte[] pcm, int from, int to, int sampleRate, Duration segmentDuration,
+                                    Duration searchWindow) {
+        int bytesPerSecond = sampleRate * 2;
+        int frameBytes = Math.max(2, bytesPerSecond / FRAMES_PER_SECOND);
+        int target = align(durationToBytes(bytesPerSecond, segmentDuration), frameBytes);
+        int window = align(durationToBytes(bytesPerSecond, searchWindow), frameBytes);
+        List<int[]> segments = new ArrayList<>();
+        if (target <= 0) {
+            segments.add(new int[]{from, to});
+            return segments;
+        }
+        int start = from;
+        while (to - start > target + window) {
+            int searchFrom = start + Math.max(frameBytes, target - window);
+            int searchTo = Math.min(start + target + window, to - frameBytes);
+            int cut = quietestFrame(pcm, searchFrom, searchTo, frameBytes) + frameBytes / 2;
+            cut &= ~1;
+            segments.add(new int[]{start, cut});
+            start = cut;
+        }
+        segments.add(new int[]{start, to});
+        return segments;
+    }
+
+    /**
+     * 返回 [from, to] 范围内能量最低的帧的起始偏移
+     */
+    private static int quietestFrame(byte[] pcm, int from, int to, int frameBytes) {
+        int best = from;
+        long bestEnergy = Long.MAX_VALUE;
+        for (int offset = from; offset <= to; offset += frameBytes) {
+            long energy = 0;
+            int end = Math.min(offset + frameBytes, pcm.length) & ~1;
+            for (int i = offset; i < end; i += 2) {
+                int sample = (short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8));
+                energy += (long) sample * sample;
+            }
+            if (energy < bestEnergy) {
+                bestEnergy = energy;
+                best = offset;
+            }
+        }
+        return best;
+    }
+
+    private static int durationToBytes(int bytesPerSecond, Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.toMillis() * bytesPerSecond / 1000);
+    }
+
+    private static int align(int bytes, int frameBytes) {
+        return bytes / frameBytes * frameBytes;
+    }
+}
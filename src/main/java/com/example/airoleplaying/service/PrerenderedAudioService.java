@@ -0,0 +1,212 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.PrerenderProperties;
+import com.example.airoleplaying.model.CharacterProfile;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预渲染语音服务
+ * 技能回复和角色问候语只取决于角色配置，启动时在后台为每个启用角色的每个技能
+ * 以及问候语预先生成文本和音频；角色配置变更时仅重新渲染该角色。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PrerenderedAudioService {
+    private static final String GREETING = "__greeting__";
+
+    private final PrerenderProperties properties;
+    private final CharacterService characterService;
+    private final SpeechAiService speechAiService;
+
+    // 预渲染结果：角色ID + 技能 -> 文本和音频
+    private final ConcurrentHashMap<String, RenderedAudio> rendered = new ConcurrentHashMap<>();
+
+    // 角色配置版本号，用于丢弃配置变更前提交的过期渲染结果
+    private final ConcurrentHashMap<String, AtomicInteger> generations = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicLong renderedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong servedCount = new AtomicLong();
+
+    private ExecutorService workerPool;
+
+    /**
+     * 应用启动完成后开始预渲染
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        workerPool = Executors.newFixedThreadPool(Math.max(1, properties.getParallelism()));
+        characterService.getAllProfiles().forEach(this::scheduleCharacter);
+        log.info("开始预渲染技能与问候语音，任务数: {}", pendingTasks.get());
+    }
+
+    /**
+     * 角色配置变更时重新渲染该角色
+     */
+    @EventListener
+    public void onCharacterProfileChanged(CharacterProfileChangedEvent event) {
+        generation(event.characterId()).incrementAndGet();
+        String prefix = event.characterId() + "\u0001";
+        rendered.keySet().removeIf(key -> key.startsWith(prefix));
+        if (workerPool != null && event.profile() != null) {
+            scheduleCharacter(event.characterId(), event.profile());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取预渲染的技能回复，未就绪返回null
+     */
+    public RenderedAudio getSkillAudio(String characterId, String skill) {
+        return served(rendered.get(renderKey(characterId, skill)));
+    }
+
+    /**
+     * 获取预渲染的问候语，未就绪返回null
+     */
+    public RenderedAudio getGreetingAudio(String characterId) {
+        return served(rendered.get(renderKey(characterId, GREETING)));
+    }
+
+    /**
+     * 生成技能回复文本
+     */
+    public String renderSkillText(CharacterProfile character, String skill) {
+        // 根据技能类型生成不同的响应
+        switch (skill) {
+            case "知识问答":
+                return String.format("作为%s，我很乐意回答您的知识性问题。请告诉我您想了解什么？", character.getName());
+            case "情感支持":
+                return String.format("作为%s，我会用心倾听您的心声，给您温暖的支持和安慰。", character.getName());
+            case "语言学习":
+                return String.format("作为%s，我可以帮助您学习语言，提供语法指导和表达建议。", character.getName());
+            case "专业咨询":
+                return String.format("作为%s，我可以为您提供专业领域的建议和指导。", character.getName());
+            case "创意写作":
+                return String.format("作为%s，我可以帮助您进行创意写作，提供灵感和创作指导。", character.getName());
+            case "历史讲解":
+                return String.format("作为%s，我可以生动地为您讲解历史事件和人物。", character.getName());
+            case "哲学思辨":
+                return String.format("作为%s，我可以引导您进行哲学思考，探讨人生和世界的深层问题。", character.getName());
+            case "文学赏析":
+                return String.format("作为%s，我可以深入分析文学作品，提升您的文学素养。", character.getName());
+            case "科学探索":
+                return String.format("作为%s，我可以用通俗易懂的方式解释科学原理，激发您对科学的兴趣。", character.getName());
+            case "艺术指导":
+                return String.format("作为%s，我可以提供艺术创作指导，培养您的艺术修养。", character.getName());
+            default:
+                return String.format("作为%s，我准备使用%s技能为您服务。", character.getName(), skill);
+        }
+    }
+
+    /**
+     * 生成问候语文本
+     */
+    public String renderGreetingText(CharacterProfile character) {
+        String greeting = String.format("你好，我是%s。", character.getName());
+        if (character.getMotto() != null && !character.getMotto().isBlank()) {
+            greeting += character.getMotto();
+        }
+        return greeting;
+    }
+
+    /**
+     * 获取预渲染统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("ready", rendered.size());
+        stats.put("pending", pendingTasks.get());
+        stats.put("rendered", renderedCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("served", servedCount.get());
+        return stats;
+    }
+
+    private void scheduleCharacter(String characterId, CharacterProfile profile) {
+        if (profile.getEnabled() == null || !profile.getEnabled()) {
+            return;
+        }
+        schedule(characterId, GREETING, renderGreetingText(profile), profile.getVoice());
+        if (profile.getSkills() != null) {
+            for (String skill : profile.getSkills()) {
+                schedule(characterId, skill, renderSkillText(profile, skill), profile.getVoice());
+            }
+        }
+    }
+
+    private void schedule(String characterId, String skill, String text, String voice) {
+        int generation = generation(characterId).get();
+        pendingTasks.incrementAndGet();
+        workerPool.submit(() -> {
+            try {
+                // 工作线程阻塞等待合成结果，线程池大小即为并发上限
+                byte[] audio = speechAiService.textToSpeech(text, voice)
+                        .get(properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                if (generation(characterId).get() != generation) {
+                    return;
+                }
+                rendered.put(renderKey(characterId, skill), new RenderedAudio(text, audio));
+                renderedCount.incrementAndGet();
+                log.debug("预渲染完成: {} / {}", characterId, skill);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                log.warn("预渲染失败: {} / {}: {}", characterId, skill, e.getMessage());
+            } finally {
+                pendingTasks.decrementAndGet();
+            }
+        });
+    }
+
+    private RenderedAudio served(RenderedAudio audio) {
+        if (audio != null) {
+            servedCount.incrementAndGet();
+        }
+        return audio;
+    }
+
+    private AtomicInteger generation(String characterId) {
+        return generations.computeIfAbsent(characterId, k -> new AtomicInteger());
+    }
+
+    private static String renderKey(String characterId, String skill) {
+        return characterId + "\u0001" + skill;
+    }
+
+    /**
+     * 预渲染结果
+     *
+     * @param text 回复文本
+     * @param audio 音频数据
+     */
+    public record RenderedAudio(String text, byte[] audio) {
+    }
+}
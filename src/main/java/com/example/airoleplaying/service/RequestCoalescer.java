@@ -0,0 +1,162 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.RequestCoalescingProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并服务（single-flight）
+ * 相同键的并发请求只触发一次上游调用，其余请求共享其结果；
+ * 流式请求共享同一个上游流，后加入者会先收到已产生的内容。
+ * 键与 LlmResponseCache / TtsAudioCache 的缓存键一致。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RequestCoalescer {
+    private final RequestCoalescingProperties properties;
+
+    // 进行中的单次调用
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightCalls = new ConcurrentHashMap<>();
+
+    // 进行中的流式调用
+    private final ConcurrentHashMap<String, Flux<String>> inFlightStreams = new ConcurrentHashMap<>();
+
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong upstreamStreams = new AtomicLong();
+    private final AtomicLong coalescedStreams = new AtomicLong();
+
+    /**
+     * 同步调用合并：首个请求在当前线程执行上游调用，其余请求阻塞等待其结果
+     * 等待可被中断（如 LlmExecutor 超时取消），最长等待 waitTimeout
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        CompletableFuture<Object> promise = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightCalls.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            log.debug("合并进行中的请求: {}", key);
+            try {
+                return (T) existing.get(properties.getWaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("等待合并的请求时被中断: " + key);
+            } catch (TimeoutException e) {
+                throw new CompletionException(e);
+            }
+        }
+        upstreamCalls.incrementAndGet();
+        try {
+            T result = call.get();
+            promise.complete(result);
+            return result;
+        } catch (Throwable e) {
+            promise.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCalls.remove(key, promise);
+        }
+    }
+
+    /**
+     * 异步调用合并：相同键的请求共享同一个上游Future
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        CompletableFuture<Object> promise = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightCalls.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            log.debug("合并进行中的异步请求: {}", key);
+            return (CompletableFuture<T>) existing.copy();
+        }
+        upstreamCalls.incrementAndGet();
+        try {
+            call.get().whenComplete((result, error) -> {
+                inFlightCalls.remove(key, promise);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (Throwable e) {
+            inFlightCalls.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) promise.copy();
+    }
+
+    /**
+     * 流式调用合并：相同键的订阅者共享同一个上游流
+     * 全部订阅者取消后上游流随之取消
+     */
+    public Flux<String> stream(String key, Supplier<Flux<String>> stream) {
+        if (!properties.isEnabled()) {
+            return stream.get();
+        }
+        return Flux.defer(() -> {
+            AtomicReference<Flux<String>> self = new AtomicReference<>();
+            Flux<String> candidate = Flux.defer(stream)
+                    .doFinally(signal -> inFlightStreams.remove(key, self.get()))
+                    .replay()
+                    .refCount();
+            self.set(candidate);
+            Flux<String> existing = inFlightStreams.putIfAbsent(key, candidate);
+            if (existing != null) {
+                coalescedStreams.incrementAndGet();
+                log.debug("合并进行中的流式请求: {}", key);
+                return existing;
+            }
+            upstreamStreams.incrementAndGet();
+            return candidate;
+        });
+    }
+
+    /**
+     * 获取合并统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("inFlightCalls", inFlightCalls.size());
+        stats.put("inFlightStreams", inFlightStreams.size());
+        stats.put("upstreamCalls", upstreamCalls.get());
+        stats.put("coalescedCalls", coalescedCalls.get());
+        stats.put("upstreamStreams", upstreamStreams.get());
+        stats.put("coalescedStreams", coalescedStreams.get());
+        stats.put("upstreamCallsSaved", coalescedCalls.get() + coalescedStreams.get());
+        return stats;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.airoleplaying.service;
+
+/**
+ * 回复渠道
+ * 不同渠道使用不同的回复长度上限：语音回复需要合成和播放，应比文本回复更简短。
+ */
+public enum ResponseChannel {
+    /**
+     * 文本对话
+     */
+    TEXT,
+
+    /**
+     * 语音对话
+     */
+    VOICE
+}
@@ -0,0 +1,254 @@
+package com.example.airoleplaying.service;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.example.airoleplaying.model.CharacterProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 角色扮演对话服务
+ * 统一处理角色系统提示词（由 SystemPromptCompiler 预编译）、会话ID、回复缓存与请求合并。
+ * 未提供会话ID的请求为无状态请求，可共享回复缓存；
+ * 有会话ID的请求按 (会话, 角色) 隔离上下文，结果依赖历史，因此只合并重复请求、不走缓存。
+ * 回复长度按渠道限制，并记录每次回复的token用量。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RolePlayChatService {
+    private final ChatClient dashScopeChatClient;
+    private final CharacterService characterService;
+    private final LlmResponseCache llmResponseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final TokenEstimator tokenEstimator;
+    private final SystemPromptCompiler systemPromptCompiler;
+    private final ChatMemory chatMemory;
+
+    /**
+     * 同步文本对话
+     */
+    public String call(String characterId, String conversationId, String userText) {
+        return call(characterId, conversationId, userText, ResponseChannel.TEXT);
+    }
+
+    /**
+     * 同步对话
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @return AI回复
+     */
+    public String call(String characterId, String conversationId, String userText, ResponseChannel channel) {
+        return call(characterId, conversationId, userText, channel, null);
+    }
+
+    /**
+     * 同步对话
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @param skill 当前使用的技能，为null时使用角色的基础提示词
+     * @return AI回复
+     */
+    public String call(String characterId, String conversationId, String userText, ResponseChannel channel,
+                       String skill) {
+        String systemPrompt = systemPrompt(characterId, skill);
+        String memoryId = memoryId(characterId, conversationId);
+        String key = requestKey(characterId, systemPrompt, memoryId, userText, channel);
+        Supplier<String> upstream = () -> {
+            ChatResponse response = prompt(systemPrompt, memoryId, userText, channel).call().chatResponse();
+            if (response == null || response.getResult() == null) {
+                return null;
+            }
+            String content = response.getResult().getOutput().getText();
+            tokenEstimator.recordResponse(channel, content, response.getMetadata().getUsage());
+            return content;
+        };
+        if (memoryId == null) {
+            return llmResponseCache.getOrCall(key, upstream);
+        }
+        return requestCoalescer.execute(key, upstream);
+    }
+
+    /**
+     * 流式文本对话
+     */
+    public Flux<String> stream(String characterId, String conversationId, String userText) {
+        return stream(characterId, conversationId, userText, ResponseChannel.TEXT);
+    }
+
+    /**
+     * 流式对话
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @return AI回复流
+     */
+    public Flux<String> stream(String characterId, String conversationId, String userText, ResponseChannel channel) {
+        return stream(characterId, conversationId, userText, channel, null);
+    }
+
+    /**
+     * 流式对话
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @param skill 当前使用的技能，为null时使用角色的基础提示词
+     * @return AI回复流
+     */
+    public Flux<String> stream(String characterId, String conversationId, String userText, ResponseChannel channel,
+                               String skill) {
+        return stream(characterId, conversationId, userText, channel, skill, usage -> {
+        });
+    }
+
+    /**
+     * 流式对话，完成时回调模型返回的用量
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @param skill 当前使用的技能，为null时使用角色的基础提示词
+     * @param usageListener 上游流完成且模型返回了用量时回调；命中缓存或合并进进行中的请求时不回调
+     * @return AI回复流
+     */
+    public Flux<String> stream(String characterId, String conversationId, String userText, ResponseChannel channel,
+                               String skill, Consumer<Usage> usageListener) {
+        String systemPrompt = systemPrompt(characterId, skill);
+        String memoryId = memoryId(characterId, conversationId);
+        String key = requestKey(characterId, systemPrompt, memoryId, userText, channel);
+        Supplier<Flux<String>> upstream = () -> {
+            // 流式分片携带累计用量，以最后一个有效值为准
+            StringBuilder content = new StringBuilder();
+            AtomicReference<Usage> usage = new AtomicReference<>();
+            return prompt(systemPrompt, memoryId, userText, channel).stream().chatResponse()
+                    .doOnNext(response -> {
+                        Usage chunkUsage = response.getMetadata().getUsage();
+                        if (chunkUsage != null && chunkUsage.getCompletionTokens() != null
+                                && chunkUsage.getCompletionTokens() > 0) {
+                            usage.set(chunkUsage);
+                        }
+                    })
+                    .mapNotNull(response -> response.getResult() == null ? null : response.getResult().getOutput().getText())
+                    .doOnNext(content::append)
+                    .doOnComplete(() -> {
+                        tokenEstimator.recordResponse(channel, content.toString(), usage.get());
+                        if (usage.get() != null) {
+                            usageListener.accept(usage.get());
+                        }
+                    });
+        };
+        if (memoryId == null) {
+            return llmResponseCache.getOrStream(key, upstream);
+        }
+        return requestCoalescer.stream(key, upstream);
+    }
+
+    /**
+     * 推测式同步对话：携带会话历史但不写入会话记忆，供识别结果确定前提前生成回复
+     * 推测命中后需调用 {@link #commitTurn} 将本轮写入记忆
+     *
+     * @param characterId 角色ID，为null时使用默认系统提示词
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param userText 推测的用户消息
+     * @param channel 回复渠道，决定回复token上限
+     * @param skill 当前使用的技能，为null时使用角色的基础提示词
+     * @return AI回复
+     */
+    public String speculate(String characterId, String conversationId, String userText, ResponseChannel channel,
+                            String skill) {
+        String systemPrompt = systemPrompt(characterId, skill);
+        String memoryId = memoryId(characterId, conversationId);
+        List<Message> history = memoryId == null ? List.of() : chatMemory.get(memoryId);
+        // 不传会话ID，记忆 Advisor 视为无状态请求，不会写入本轮
+        ChatResponse response = prompt(systemPrompt, null, userText, channel).messages(history).call().chatResponse();
+        if (response == null || response.getResult() == null) {
+            return null;
+        }
+        String content = response.getResult().getOutput().getText();
+        tokenEstimator.recordResponse(channel, content, response.getMetadata().getUsage());
+        return content;
+    }
+
+    /**
+     * 将推测命中的一轮对话写入会话记忆
+     */
+    public void commitTurn(String characterId, String conversationId, String userText, String reply) {
+        String memoryId = memoryId(characterId, conversationId);
+        if (memoryId == null || reply == null) {
+            return;
+        }
+        chatMemory.add(memoryId, List.of(new UserMessage(userText), new AssistantMessage(reply)));
+    }
+
+    /**
+     * 构建请求：角色系统提示词 + 用户消息 + 会话ID + 渠道回复上限
+     */
+    private ChatClient.ChatClientRequestSpec prompt(String systemPrompt, String memoryId, String userText,
+                                                    ResponseChannel channel) {
+        ChatClient.ChatClientRequestSpec spec = dashScopeChatClient.prompt();
+        if (systemPrompt != null) {
+            spec = spec.system(systemPrompt);
+        }
+        spec = spec.user(userText)
+                .options(DashScopeChatOptions.builder()
+                        .withTopP(ChatService.TOP_P)
+                        .withMaxToken(tokenEstimator.maxResponseTokens(channel))
+                        .build());
+        if (memoryId != null) {
+            spec = spec.advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, memoryId));
+        }
+        return spec;
+    }
+
+    /**
+     * 角色的预编译系统提示词，未指定角色时返回null（使用默认系统提示词）
+     */
+    private String systemPrompt(String characterId, String skill) {
+        if (characterId == null) {
+            return null;
+        }
+        CharacterProfile character = characterService.getCharacterProfile(characterId);
+        return systemPromptCompiler.systemPrompt(characterId, character, skill);
+    }
+
+    /**
+     * 会话记忆ID：同一客户端与不同角色的对话互不干扰
+     */
+    private static String memoryId(String characterId, String conversationId) {
+        if (conversationId == null || conversationId.isBlank()) {
+            return null;
+        }
+        return characterId == null ? conversationId : conversationId + "@" + characterId;
+    }
+
+    private String requestKey(String characterId, String systemPrompt, String memoryId, String userText,
+                              ResponseChannel channel) {
+        String key = llmResponseCache.key(characterId, systemPrompt, userText,
+                llmResponseCache.modelOptions(tokenEstimator.maxResponseTokens(channel)));
+        return memoryId == null ? key : "conversation:" + memoryId + ":" + key;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.SpeculativeLlmProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推测式LLM生成服务
+ * 中间识别结果保持稳定一段时间后，在后台提前发起LLM调用；
+ * 最终识别结果与推测文本（规范化后）一致时直接使用推测回复，否则取消并丢弃。
+ * 推测调用不写入会话记忆，命中后才将本轮写入。本节点的推测调用受并发数和每分钟次数限制。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SpeculativeResponseService {
+    private static final String ENDPOINT = "speculative-llm";
+
+    private final SpeculativeLlmProperties properties;
+    private final RolePlayChatService rolePlayChatService;
+    private final LlmExecutor llmExecutor;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "speculative-llm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 会话ID -> 推测状态
+    private final ConcurrentHashMap<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private Semaphore inFlight;
+    private long budgetWindowStart;
+    private int budgetWindowCount;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong budgetRejected = new AtomicLong();
+    private final AtomicLong latencySavedMs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(Math.max(1, properties.getMaxConcurrent()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        sessions.keySet().forEach(this::discard);
+    }
+
+    /**
+     * 收到中间识别结果：文本变化时重新计时，保持稳定达到窗口时长后开始推测
+     * 推测使用会话ID作为对话ID，与 StreamingVoiceService 的正式请求一致
+     *
+     * @param sessionId 会话ID
+     * @param characterId 角色ID
+     * @param skill 当前使用的技能
+     * @param text 中间识别结果
+     */
+    public void onPartial(String sessionId, String characterId, String skill, String text) {
+        if (!properties.isEnabled() || text == null) {
+            return;
+        }
+        String normalized = normalize(text);
+        if (normalized.length() < properties.getMinChars()) {
+            return;
+        }
+        SessionState state = sessions.computeIfAbsent(sessionId, k -> new SessionState());
+        synchronized (state) {
+            if (normalized.equals(state.partial)) {
+                return;
+            }
+            state.partial = normalized;
+            if (state.stableCheck != null) {
+                state.stableCheck.cancel(false);
+            }
+            String userText = text.trim();
+            state.stableCheck = scheduler.schedule(
+                    () -> onStable(sessionId, state, normalized, characterId, skill, userText),
+                    properties.getStableWindow().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 收到最终识别结果：领取匹配的推测回复
+     *
+     * @return 推测回复（完成后已写入会话记忆）；没有匹配的推测时返回null，调用方按正常流程请求
+     */
+    public CompletableFuture<String> claim(String sessionId, String characterId, String skill, String finalText) {
+        SessionState state = sessions.remove(sessionId);
+        if (state == null || finalText == null) {
+            return null;
+        }
+        synchronized (state) {
+            if (state.stableCheck != null) {
+                state.stableCheck.cancel(false);
+            }
+            Speculation speculation = state.speculation;
+            if (speculation == null) {
+                return null;
+            }
+            if (!speculation.matches(normalize(finalText), characterId, skill)
+                    || speculation.future.isCompletedExceptionally()) {
+                cancel(speculation);
+                return null;
+            }
+            long claimTime = System.currentTimeMillis();
+            String userText = finalText.trim();
+            return speculation.future.thenApply(reply -> {
+                // 正常流程在拿到最终结果时才开始调用：推测在领取前完成时节省整个调用时长，否则节省领取前已运行的时长
+                long completedAt = speculation.completedAt.get();
+                if (completedAt == 0) {
+                    // 完成回调尚未执行，当前即为完成时刻
+                    completedAt = System.currentTimeMillis();
+                }
+                long saved = Math.min(claimTime, completedAt) - speculation.startTime;
+                wins.incrementAndGet();
+                latencySavedMs.addAndGet(Math.max(0, saved));
+                rolePlayChatService.commitTurn(characterId, sessionId, userText, reply);
+                log.debug("推测命中: {}, 节省 {}ms", sessionId, saved);
+                return reply;
+            });
+        }
+    }
+
+    /**
+     * 丢弃会话的推测状态（会话结束时调用）
+     */
+    public void discard(String sessionId) {
+        SessionState state = sessions.remove(sessionId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.stableCheck != null) {
+                state.stableCheck.cancel(false);
+            }
+            if (state.speculation != null) {
+                cancel(state.speculation);
+            }
+        }
+    }
+
+    /**
+     * 获取推测统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long winCount = wins.get();
+        long decided = winCount + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("stableWindowMs", properties.getStableWindow().toMillis());
+        stats.put("maxConcurrent", properties.getMaxConcurrent());
+        stats.put("maxPerMinute", properties.getMaxPerMinute());
+        stats.put("inFlight", inFlight == null ? 0 : Math.max(1, properties.getMaxConcurrent()) - inFlight.availablePermits());
+        stats.put("started", started.get());
+        stats.put("wins", winCount);
+        stats.put("misses", misses.get());
+        stats.put("failures", failures.get());
+        stats.put("budgetRejected", budgetRejected.get());
+        stats.put("winRate", decided == 0 ? 0.0 : (double) winCount / decided);
+        stats.put("latencySavedMs", latencySavedMs.get());
+        stats.put("avgLatencySavedMs", winCount == 0 ? 0 : latencySavedMs.get() / winCount);
+        return stats;
+    }
+
+    private void onStable(String sessionId, SessionState state, String normalized, String characterId, String skill,
+                          String userText) {
+        synchronized (state) {
+            if (sessions.get(sessionId) != state || !normalized.equals(state.partial)) {
+                return;
+            }
+            Speculation current = state.speculation;
+            if (current != null) {
+                if (current.matches(normalized, characterId, skill)) {
+                    return;
+                }
+                // 识别结果已改变，之前的推测作废
+                cancel(current);
+                state.speculation = null;
+            }
+            if (!acquireBudget()) {
+                budgetRejected.incrementAndGet();
+                return;
+            }
+            started.incrementAndGet();
+            Speculation speculation = new Speculation(normalized, characterId, skill, System.currentTimeMillis(),
+                    llmExecutor.submit(ENDPOINT, () -> rolePlayChatService.speculate(characterId, sessionId, userText,
+                            ResponseChannel.VOICE, skill)), new AtomicLong());
+            speculation.future.whenComplete((reply, error) -> {
+                speculation.completedAt.set(System.currentTimeMillis());
+                inFlight.release();
+                if (error != null && !(error instanceof CancellationException)) {
+                    failures.incrementAndGet();
+                    log.debug("推测调用失败: {}: {}", sessionId, error.getMessage());
+                }
+            });
+            state.speculation = speculation;
+            log.debug("开始推测: {}, 文本: {}", sessionId, userText);
+        }
+    }
+
+    private void cancel(Speculation speculation) {
+        misses.incrementAndGet();
+        speculation.future.cancel(true);
+    }
+
+    /**
+     * 占用推测预算：并发数和每分钟次数均未超限时才允许
+     */
+    private synchronized boolean acquireBudget() {
+        long now = System.currentTimeMillis();
+        if (now - budgetWindowStart >= 60_000) {
+            budgetWindowStart = now;
+            budgetWindowCount = 0;
+        }
+        if (budgetWindowCount >= properties.getMaxPerMinute() || !inFlight.tryAcquire()) {
+            return false;
+        }
+        budgetWindowCount++;
+        return true;
+    }
+
+    /**
+     * 规范化识别文本：去除标点、符号和空白，统一小写
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                normalized.appendCodePoint(Character.toLowerCase(codePoint));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * 单个会话的推测状态，通过对象锁保护
+     */
+    private static class SessionState {
+        String partial;
+        ScheduledFuture<?> stableCheck;
+        Speculation speculation;
+    }
+
+    /**
+     * 进行中的推测调用，completedAt 为上游调用完成的时间（0表示未完成）
+     */
+    private record Speculation(String text, String characterId, String skill, long startTime,
+                               CompletableFuture<String> future, AtomicLong completedAt) {
+        boolean matches(String normalizedText, String characterId, String skill) {
+            return text.equals(normalizedText) && Objects.equals(this.characterId, characterId)
+                    && Objects.equals(this.skill, skill);
+        }
+    }
+}
@@ -1,10 +1,8 @@
 package com.example.airoleplaying.service;
 
-import com.alibaba.nls.client.AccessToken;
 import com.alibaba.nls.client.protocol.InputFormatEnum;
 import com.alibaba.nls.client.protocol.OutputFormatEnum;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
-import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
@@ -12,7 +10,11 @@ import com.alibaba.nls.client.protocol.tts.SpeechSynthesizer;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerListener;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerResponse;
 import com.example.airoleplaying.config.AlibabaCloudProperties;
+import com.example.airoleplaying.config.AsrTranscriptionProperties;
+import com.example.airoleplaying.config.TtsChunkingProperties;
+import com.example.airoleplaying.config.TtsVoiceProperties;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,24 +23,60 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 @Getter
 public class SpeechAiService {
+    private static final String TTS_FORMAT = "wav";
+    private static final int TTS_SAMPLE_RATE = 16000;
+    private static final int TTS_PITCH_RATE = 100;
+    private static final int TTS_SPEECH_RATE = 100;
+
     private final AlibabaCloudProperties alibabaCloudProperties;
-    private NlsClient client;
-    private volatile String accessToken;
+    private final TtsAudioCache ttsAudioCache;
+    private final RequestCoalescer requestCoalescer;
+    private final AsrTranscriptionProperties asrTranscriptionProperties;
+    private final TtsChunkingProperties ttsChunkingProperties;
+    private final TtsVoiceProperties ttsVoiceProperties;
+    private final NlsClientManager nlsClientManager;
+    private final Map<String, VoiceQueue> voiceQueues = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor asrExecutor;
     private static long startTime;
 
     @PostConstruct
     public void init() {
         try {
             log.info("初始化阿里云语音AI服务...");
-            refreshAccessToken();
-            client = new NlsClient(accessToken);
+            AtomicInteger threadIndex = new AtomicInteger();
+            int parallelism = Math.max(1, asrTranscriptionProperties.getParallelism());
+            asrExecutor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "asr-segment-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            asrExecutor.allowCoreThreadTimeOut(true);
             log.info("阿里云语音AI服务初始化成功");
         } catch (Exception e) {
             log.error("阿里云语音AI服务初始化失败: {}", e.getMessage(), e);
@@ -46,60 +84,287 @@ public class SpeechAiService {
         }
     }
 
-    private void refreshAccessToken() throws Exception {
-        AccessToken accessTokenClient = new AccessToken(
-                alibabaCloudProperties.getAccessKeyId(),
-                alibabaCloudProperties.getAccessKeySecret()
-        );
-        accessTokenClient.apply();
-        this.accessToken = accessTokenClient.getToken();
-        if (this.accessToken == null || this.accessToken.isEmpty()) {
-            throw new Exception("获取访问令牌失败");
+    @PreDestroy
+    public void destroy() {
+        if (asrExecutor != null) {
+            asrExecutor.shutdownNow();
         }
-        log.debug("访问令牌刷新成功");
+        voiceQueues.values().forEach(queue -> queue.executor.shutdownNow());
     }
 
     /**
-     * 语音转文本（ASR）
+     * 为一个识别或合成连接分配语音服务客户端分片，连接结束后需释放
+     *
+     * @param key 会话ID，可为null
+     */
+    public NlsClientManager.Lease acquireClient(String key) {
+        return nlsClientManager.acquire(key);
+    }
+
+    /**
+     * 语音转文本（ASR），使用默认截止时间
      */
     public CompletableFuture<String> speechToText(MultipartFile file) {
-        CompletableFuture<String> resultFuture = new CompletableFuture<>();
+        return speechToText(file, asrTranscriptionProperties.getDeadline());
+    }
+
+    /**
+     * 语音转文本（ASR）
+     * 立即返回；读取录音和发送均在ASR专用线程池中执行，结果由转录回调驱动。
+     * 录音全速发送，超过分段时长的录音在静音处切分，由多个转录器并行转录后按顺序拼接。
+     * 取消返回的 Future 或超过截止时间时，中断仍在进行的分段转录。
+     *
+     * @param file 录音文件（WAV，或无文件头的8kHz 16位单声道PCM）
+     * @param deadline 截止时间，超时以 TimeoutException 失败
+     * @return 转录文本
+     */
+    public CompletableFuture<String> speechToText(MultipartFile file, Duration deadline) {
+        return transcribe(() -> {
+            try (InputStream inputStream = file.getInputStream()) {
+                return inputStream.readAllBytes();
+            }
+        }, deadline);
+    }
+
+    /**
+     * 流式语音转文本（ASR），使用默认截止时间
+     */
+    public CompletableFuture<String> speechToText(InputStream audio) {
+        return speechToText(audio, asrTranscriptionProperties.getDeadline());
+    }
+
+    /**
+     * 流式语音转文本（ASR）
+     * 边读取上传数据边发送给转录器，识别与上传同时进行，每个请求只占用一个发送缓冲区。
+     * 请求体只能在请求线程中读取，因此读取和发送在调用线程中进行；上传结束后立即返回，
+     * 等待最终识别结果的过程在ASR专用线程池中执行。取消或超过截止时间时停止读取。
+     *
+     * @param audio 音频数据流（WAV，或无文件头的8kHz 16位单声道PCM）
+     * @param deadline 截止时间，超时以 TimeoutException 失败
+     * @return 转录文本
+     */
+    public CompletableFuture<String> speechToText(InputStream audio, Duration deadline) {
+        Transcription transcription = newTranscription(deadline);
+        CompletableFuture<String> result = transcription.result;
+        CompletableFuture<String> part = new CompletableFuture<>();
+        part.whenComplete((text, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (text.isEmpty()) {
+                result.completeExceptionally(new RuntimeException("转录结果为空"));
+            } else {
+                result.complete(text);
+            }
+        });
         SpeechTranscriber transcriber = null;
         try {
-            transcriber = new SpeechTranscriber(client, getTranscriberListener(resultFuture));
-            transcriber.setAppKey(alibabaCloudProperties.getAsr().getAppKey());
-            transcriber.setFormat(InputFormatEnum.PCM);
-            transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_8K);
-            transcriber.setEnableIntermediateResult(false);
-            transcriber.setEnablePunctuation(true);
-            transcriber.setEnableITN(false);
+            // 先识别格式再连接上游，不支持的格式不会产生上游调用
+            byte[] header = new byte[AudioInput.MAX_HEADER_BYTES];
+            int len = audio.readNBytes(header, 0, header.length);
+            AudioInput input = AudioInput.sniff(header, len);
+            AudioInput.Converter converter = input.needsConversion() ? input.newConverter() : null;
+            long remaining = input.dataLength() < 0 ? Long.MAX_VALUE : input.dataLength();
+            transcriber = newTranscriber(part, input.outputSampleRate());
             transcriber.start();
-            try (InputStream inputStream = file.getInputStream()) {
-                byte[] b = new byte[3200];
-                int len;
-                while ((len = inputStream.read(b)) > 0) {
-                    log.debug("发送数据包长度: {}", len);
-                    transcriber.send(b, len);
-                    int deltaSleep = getSleepDelta(len, 8000);
-                    Thread.sleep(deltaSleep);
+            int headerData = (int) Math.min(len - input.dataOffset(), remaining);
+            send(transcriber, converter, header, input.dataOffset(), headerData);
+            remaining -= headerData;
+            long total = len;
+            byte[] b = new byte[Math.max(2, asrTranscriptionProperties.getChunkBytes())];
+            // WAV的 data 块之后可能还有其他块，不发送给转录器
+            while (remaining > 0 && !result.isDone() && (len = audio.read(b)) > 0) {
+                int dataBytes = (int) Math.min(len, remaining);
+                send(transcriber, converter, b, 0, dataBytes);
+                remaining -= dataBytes;
+                total += len;
+            }
+            log.debug("上传读取完成: {} bytes, 格式: {} {}Hz {}声道", total, input.container(), input.sampleRate(),
+                    input.channels());
+            SpeechTranscriber uploaded = transcriber;
+            transcriber = null;
+            transcription.track(asrExecutor.submit(() -> {
+                try {
+                    uploaded.stop();
+                    if (!part.isDone()) {
+                        part.completeExceptionally(new RuntimeException("语音转录未返回结果"));
+                    }
+                } catch (Exception e) {
+                    part.completeExceptionally(new RuntimeException("语音转录失败: " + e.getMessage()));
+                } finally {
+                    uploaded.close();
+                }
+            }));
+        } catch (IllegalArgumentException e) {
+            log.warn("拒绝不支持的音频: {}", e.getMessage());
+            part.completeExceptionally(e);
+        } catch (Exception e) {
+            log.error("流式语音转录失败: {}", e.getMessage(), e);
+            part.completeExceptionally(new RuntimeException("语音转录失败: " + e.getMessage()));
+        } finally {
+            if (transcriber != null) {
+                transcriber.close();
+            }
+        }
+        return result;
+    }
+
+    private CompletableFuture<String> transcribe(Callable<byte[]> audioSource, Duration deadline) {
+        Transcription transcription = newTranscription(deadline);
+        CompletableFuture<String> result = transcription.result;
+        transcription.track(asrExecutor.submit(() -> {
+            try {
+                byte[] audio = audioSource.call();
+                // 先识别格式再连接上游，不支持的格式不会产生上游调用
+                AudioInput input = AudioInput.sniff(audio, audio.length);
+                int from = input.dataOffset();
+                int to = input.dataEnd(audio.length);
+                if (input.needsConversion()) {
+                    byte[] converted = input.newConverter().convert(audio, from, to - from);
+                    startSegments(transcription, converted, 0, converted.length, input.outputSampleRate());
+                } else {
+                    startSegments(transcription, audio, from, to, input.sampleRate());
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("拒绝不支持的音频: {}", e.getMessage());
+                result.completeExceptionally(e);
+            } catch (Exception e) {
+                log.error("读取录音失败: {}", e.getMessage(), e);
+                result.completeExceptionally(new RuntimeException("语音转录失败: " + e.getMessage()));
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * 创建转录请求：取消、失败或超过截止时间时中断剩余任务
+     */
+    private Transcription newTranscription(Duration deadline) {
+        Transcription transcription = new Transcription();
+        transcription.result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS).whenComplete((text, error) -> {
+            if (error != null) {
+                transcription.cancelAll();
+                if (error instanceof TimeoutException) {
+                    log.warn("语音转录超过截止时间: {} ms", deadline.toMillis());
+                }
+            }
+        });
+        return transcription;
+    }
+
+    /**
+     * 创建转录器（PCM，关闭中间结果），结果由监听器回调写入 resultFuture
+     */
+    private SpeechTranscriber newTranscriber(CompletableFuture<String> resultFuture, int sampleRate) throws Exception {
+        NlsClientManager.Lease lease = nlsClientManager.acquire(null);
+        resultFuture.whenComplete((text, error) -> lease.release());
+        SpeechTranscriber transcriber = new SpeechTranscriber(lease.client(),
+                getTranscriberListener(resultFuture, lease, System.currentTimeMillis()));
+        transcriber.setAppKey(alibabaCloudProperties.getAsr().getAppKey());
+        transcriber.setFormat(InputFormatEnum.PCM);
+        transcriber.setSampleRate(sampleRate == 16000 ? SampleRateEnum.SAMPLE_RATE_16K : SampleRateEnum.SAMPLE_RATE_8K);
+        transcriber.setEnableIntermediateResult(false);
+        transcriber.setEnablePunctuation(true);
+        transcriber.setEnableITN(false);
+        return transcriber;
+    }
+
+    /**
+     * 发送一段音频数据，需要转换时先经过转换器
+     */
+    private static void send(SpeechTranscriber transcriber, AudioInput.Converter converter, byte[] data, int offset,
+                             int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (converter != null) {
+            byte[] converted = converter.convert(data, offset, length);
+            if (converted.length > 0) {
+                transcriber.send(converted, converted.length);
+            }
+            return;
+        }
+        if (offset != 0) {
+            System.arraycopy(data, offset, data, 0, length);
+        }
+        transcriber.send(data, length);
+    }
+
+    /**
+     * 切分音频并提交各分段的转录任务，全部分段完成后按顺序拼接结果
+     */
+    private void startSegments(Transcription transcription, byte[] pcm, int from, int to, int sampleRate) {
+        long start = System.currentTimeMillis();
+        List<int[]> segments = PcmSegmenter.split(pcm, from, to, sampleRate,
+                asrTranscriptionProperties.getSegmentDuration(), asrTranscriptionProperties.getSilenceSearchWindow());
+        List<CompletableFuture<String>> parts = new ArrayList<>(segments.size());
+        for (int[] segment : segments) {
+            CompletableFuture<String> part = new CompletableFuture<>();
+            parts.add(part);
+            transcription.track(asrExecutor.submit(() -> transcribeSegment(pcm, segment[0], segment[1], sampleRate, part)));
+        }
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                transcription.result.completeExceptionally(
+                        error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            for (CompletableFuture<String> part : parts) {
+                String partText = part.join();
+                if (!partText.isEmpty()) {
+                    text.append(partText).append(" ");
+                }
+            }
+            String finalText = text.toString().trim();
+            if (finalText.isEmpty()) {
+                transcription.result.completeExceptionally(new RuntimeException("转录结果为空"));
+                return;
+            }
+            long audioMs = (to - from) * 1000L / (sampleRate * 2);
+            log.info("ASR完成: 音频 {} ms, {} 个分段, 耗时 {} ms", audioMs, segments.size(),
+                    System.currentTimeMillis() - start);
+            transcription.result.complete(finalText);
+        });
+    }
+
+    /**
+     * 转录单个分段，结果由监听器回调写入 part
+     */
+    private void transcribeSegment(byte[] pcm, int from, int to, int sampleRate, CompletableFuture<String> part) {
+        SpeechTranscriber transcriber = null;
+        try {
+            transcriber = newTranscriber(part, sampleRate);
+            transcriber.start();
+            byte[] b = new byte[Math.max(2, asrTranscriptionProperties.getChunkBytes())];
+            for (int offset = from; offset < to && !part.isDone(); offset += b.length) {
+                int len = Math.min(b.length, to - offset);
+                System.arraycopy(pcm, offset, b, 0, len);
+                transcriber.send(b, len);
+                if (asrTranscriptionProperties.isRealTimePacing()) {
+                    Thread.sleep(getSleepDelta(len, sampleRate));
                 }
             }
             long now = System.currentTimeMillis();
-            log.info("ASR等待完成");
             transcriber.stop();
-            log.info("ASR延迟: {} ms", (System.currentTimeMillis() - now));
+            log.debug("ASR分段等待完成: {} ms", (System.currentTimeMillis() - now));
+            if (!part.isDone()) {
+                part.completeExceptionally(new RuntimeException("语音转录未返回结果"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            part.completeExceptionally(new CancellationException("语音转录已取消"));
         } catch (Exception e) {
             log.error("语音转录失败: {}", e.getMessage(), e);
-            resultFuture.completeExceptionally(new RuntimeException("语音转录失败: " + e.getMessage()));
+            part.completeExceptionally(new RuntimeException("语音转录失败: " + e.getMessage()));
         } finally {
             if (null != transcriber) {
                 transcriber.close();
             }
         }
-        return resultFuture;
     }
 
-    private static SpeechTranscriberListener getTranscriberListener(CompletableFuture<String> resultFuture) {
+    private static SpeechTranscriberListener getTranscriberListener(CompletableFuture<String> resultFuture,
+                                                                    NlsClientManager.Lease lease, long createTime) {
         return new SpeechTranscriberListener() {
             private final StringBuilder fullText = new StringBuilder();
             @Override
@@ -109,6 +374,7 @@ public class SpeechAiService {
             }
             @Override
             public void onTranscriberStart(SpeechTranscriberResponse response) {
+                lease.started(createTime);
                 log.debug("转录开始 - task_id: {}, status: {}", response.getTaskId(), response.getStatus());
             }
             @Override
@@ -127,12 +393,8 @@ public class SpeechAiService {
             @Override
             public void onTranscriptionComplete(SpeechTranscriberResponse response) {
                 log.info("转录完成 - task_id: {}, status: {}", response.getTaskId(), response.getStatus());
-                String finalText = fullText.toString().trim();
-                if (!finalText.isEmpty()) {
-                    resultFuture.complete(finalText);
-                } else {
-                    resultFuture.completeExceptionally(new RuntimeException("转录结果为空"));
-                }
+                // 静音分段的结果为空，由调用方判断整体结果
+                resultFuture.complete(fullText.toString().trim());
             }
             @Override
             public void onFail(SpeechTranscriberResponse response) {
@@ -148,25 +410,207 @@ public class SpeechAiService {
     }
 
     /**
-     * 文本转语音（TTS），返回音频字节数组
+     * 计算TTS缓存键，参数需与实际合成参数保持一致；发音人为空时使用默认发音人
+     */
+    public String ttsCacheKey(String text, String voice) {
+        return TtsAudioCache.buildKey(text, resolveVoice(voice), TTS_SAMPLE_RATE, TTS_FORMAT,
+                TTS_PITCH_RATE, TTS_SPEECH_RATE);
+    }
+
+    /**
+     * 解析实际使用的发音人：角色未配置发音人时使用默认发音人
+     */
+    public String resolveVoice(String voice) {
+        if (voice == null || voice.isBlank()) {
+            return alibabaCloudProperties.getTts().getVoice();
+        }
+        return voice.trim();
+    }
+
+    /**
+     * 文本转语音（TTS），使用默认发音人
      */
     public CompletableFuture<byte[]> textToSpeech(String text) {
+        return textToSpeech(text, null);
+    }
+
+    /**
+     * 文本转语音（TTS），返回音频字节数组
+     * 长文本分段并行合成后拼接为单个WAV
+     *
+     * @param text 文本
+     * @param voice 发音人（通常来自角色配置），为空时使用默认发音人
+     */
+    public CompletableFuture<byte[]> textToSpeech(String text, String voice) {
+        String resolvedVoice = resolveVoice(voice);
+        if (!shouldChunk(text)) {
+            return synthesizeCached(text, resolvedVoice);
+        }
+        String cacheKey = ttsCacheKey(text, resolvedVoice);
+        byte[] cachedAudio = ttsAudioCache.get(cacheKey);
+        if (cachedAudio != null) {
+            log.debug("TTS缓存命中: {} bytes", cachedAudio.length);
+            return CompletableFuture.completedFuture(cachedAudio);
+        }
+        return requestCoalescer.executeAsync(cacheKey, () -> {
+            List<CompletableFuture<byte[]>> parts = synthesizeSegments(text, resolvedVoice);
+            return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                List<byte[]> audio = new ArrayList<>(parts.size());
+                parts.forEach(part -> audio.add(part.join()));
+                byte[] merged = AudioInput.mergeWav(audio);
+                ttsAudioCache.put(cacheKey, merged);
+                return merged;
+            });
+        });
+    }
+
+    /**
+     * 分段文本转语音：返回按文本顺序排列的各段音频（各自为完整WAV），
+     * 调用方可在首段完成后立即开始输出；短文本只有一段。全部分段完成后拼接结果写入缓存
+     *
+     * @param voice 发音人，为空时使用默认发音人
+     */
+    public List<CompletableFuture<byte[]>> textToSpeechSegments(String text, String voice) {
+        String resolvedVoice = resolveVoice(voice);
+        if (!shouldChunk(text)) {
+            return List.of(synthesizeCached(text, resolvedVoice));
+        }
+        String cacheKey = ttsCacheKey(text, resolvedVoice);
+        byte[] cachedAudio = ttsAudioCache.get(cacheKey);
+        if (cachedAudio != null) {
+            return List.of(CompletableFuture.completedFuture(cachedAudio));
+        }
+        List<CompletableFuture<byte[]>> parts = synthesizeSegments(text, resolvedVoice);
+        if (parts.size() > 1) {
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenRun(() -> {
+                List<byte[]> audio = new ArrayList<>(parts.size());
+                parts.forEach(part -> audio.add(part.join()));
+                ttsAudioCache.put(cacheKey, AudioInput.mergeWav(audio));
+            });
+        }
+        return parts;
+    }
+
+    /**
+     * 查询已缓存的完整音频（WAV），未命中返回null
+     */
+    public byte[] cachedSpeech(String text, String voice) {
+        return ttsAudioCache.get(ttsCacheKey(text, voice));
+    }
+
+    /**
+     * 将合成任务提交到发音人专属队列
+     * 每个发音人有独立的并发上限和等待队列，热门发音人排队时不会占用其他发音人的合成资源
+     *
+     * @param voice 发音人，为空时使用默认发音人
+     * @param job 合成任务，在任务内阻塞等待合成完成以占用该发音人的并发名额
+     * @throws RejectedExecutionException 该发音人的等待队列已满
+     */
+    public void submitSynthesis(String voice, Runnable job) {
+        VoiceQueue queue = voiceQueues.computeIfAbsent(resolveVoice(voice), VoiceQueue::new);
+        try {
+            queue.executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            queue.rejected.incrementAndGet();
+            log.warn("发音人 {} 的合成队列已满，拒绝合成请求", queue.voice);
+            throw new RejectedExecutionException("发音人 " + queue.voice + " 的合成队列已满", e);
+        }
+    }
+
+    /**
+     * 各发音人合成队列统计
+     */
+    public Map<String, Object> getVoiceStatistics() {
+        Map<String, Object> voices = new LinkedHashMap<>();
+        voiceQueues.values().forEach(queue -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("active", queue.executor.getActiveCount());
+            stats.put("queued", queue.executor.getQueue().size());
+            stats.put("completed", queue.executor.getCompletedTaskCount());
+            stats.put("rejected", queue.rejected.get());
+            voices.put(queue.voice, stats);
+        });
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("concurrencyPerVoice", ttsVoiceProperties.getConcurrencyPerVoice());
+        statistics.put("queueCapacity", ttsVoiceProperties.getQueueCapacity());
+        statistics.put("voices", voices);
+        return statistics;
+    }
+
+    private boolean shouldChunk(String text) {
+        return ttsChunkingProperties.isEnabled() && text.length() > ttsChunkingProperties.getMinChars();
+    }
+
+    /**
+     * 在句子和分句边界处切分文本并并行合成，单个请求同时合成的分段数不超过 parallelism
+     */
+    private List<CompletableFuture<byte[]>> synthesizeSegments(String text, String voice) {
+        List<String> segments = TextSegmenter.split(text, ttsChunkingProperties.getMaxSegmentChars());
+        if (segments.size() <= 1) {
+            return List.of(synthesizeCached(text, voice));
+        }
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(segments.size());
+        segments.forEach(segment -> results.add(new CompletableFuture<>()));
+        AtomicInteger next = new AtomicInteger();
+        Runnable launch = new Runnable() {
+            @Override
+            public void run() {
+                int index = next.getAndIncrement();
+                if (index >= segments.size()) {
+                    return;
+                }
+                // 一段完成后再启动下一段，保持并行度不变
+                synthesizeCached(segments.get(index), voice).whenComplete((audio, error) -> {
+                    if (error != null) {
+                        results.get(index).completeExceptionally(error);
+                    } else {
+                        results.get(index).complete(audio);
+                    }
+                    run();
+                });
+            }
+        };
+        int parallelism = Math.min(segments.size(), Math.max(1, ttsChunkingProperties.getParallelism()));
+        for (int i = 0; i < parallelism; i++) {
+            launch.run();
+        }
+        log.debug("TTS分段合成: {} 字, {} 段, 并行度 {}", text.length(), segments.size(), parallelism);
+        return results;
+    }
+
+    /**
+     * 单段合成：优先读取缓存，相同文本的并发合成请求共享同一次上游调用
+     */
+    private CompletableFuture<byte[]> synthesizeCached(String text, String voice) {
+        String cacheKey = ttsCacheKey(text, voice);
+        byte[] cachedAudio = ttsAudioCache.get(cacheKey);
+        if (cachedAudio != null) {
+            log.debug("TTS缓存命中: {} bytes", cachedAudio.length);
+            return CompletableFuture.completedFuture(cachedAudio);
+        }
+        return requestCoalescer.executeAsync(cacheKey, () -> synthesize(text, voice, cacheKey));
+    }
+
+    private CompletableFuture<byte[]> synthesize(String text, String voice, String cacheKey) {
         CompletableFuture<byte[]> future = new CompletableFuture<>();
-        new Thread(() -> {
+        future.thenAccept(audio -> ttsAudioCache.put(cacheKey, audio));
+        Runnable job = () -> {
             SpeechSynthesizer synthesizer = null;
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            NlsClientManager.Lease lease = nlsClientManager.acquire(null);
             try {
-                synthesizer = new SpeechSynthesizer(client, getTtsListener(baos, future));
+                synthesizer = new SpeechSynthesizer(lease.client(), getTtsListener(baos, future));
                 synthesizer.setAppKey(alibabaCloudProperties.getTts().getAppKey());
                 synthesizer.setFormat(OutputFormatEnum.WAV);
                 synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-                synthesizer.setVoice(alibabaCloudProperties.getTts().getVoice());
-                synthesizer.setPitchRate(100);
-                synthesizer.setSpeechRate(100);
+                synthesizer.setVoice(voice);
+                synthesizer.setPitchRate(TTS_PITCH_RATE);
+                synthesizer.setSpeechRate(TTS_SPEECH_RATE);
                 synthesizer.setText(text);
                 synthesizer.addCustomedParam("enable_subtitle", false);
                 long start = System.currentTimeMillis();
                 synthesizer.start();
+                lease.started(start);
                 log.info("tts start latency {} ms", (System.currentTimeMillis() - start));
                 SpeechAiService.startTime = System.currentTimeMillis();
                 synthesizer.waitForComplete();
@@ -178,9 +622,15 @@ public class SpeechAiService {
                 if (null != synthesizer) {
                     synthesizer.close();
                 }
+                lease.release();
                 try { baos.close(); } catch (IOException ignore) {}
             }
-        }).start();
+        };
+        try {
+            submitSynthesis(voice, job);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
         return future;
     }
 
@@ -216,5 +666,47 @@ public class SpeechAiService {
             }
         };
     }
-}
 
+    /**
+     * 一次转录请求：结果及其分段任务，结果取消、失败或超时后中断剩余任务
+     */
+    private static final class Transcription {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        private final List<Future<?>> tasks = new ArrayList<>();
+
+        synchronized void track(Future<?> task) {
+            if (result.isDone()) {
+                task.cancel(true);
+            } else {
+                tasks.add(task);
+            }
+        }
+
+        synchronized void cancelAll() {
+            tasks.forEach(task -> task.cancel(true));
+            tasks.clear();
+        }
+    }
+
+    /**
+     * 单个发音人的合成队列：固定并发数的线程池加有界等待队列
+     */
+    private final class VoiceQueue {
+        final String voice;
+        final ThreadPoolExecutor executor;
+        final AtomicLong rejected = new AtomicLong();
+
+        VoiceQueue(String voice) {
+            this.voice = voice;
+            int concurrency = Math.max(1, ttsVoiceProperties.getConcurrencyPerVoice());
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, ttsVoiceProperties.getQueueCapacity())), runnable -> {
+                        Thread thread = new Thread(runnable, "tts-" + voice + "-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+}
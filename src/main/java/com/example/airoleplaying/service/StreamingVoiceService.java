@@ -10,12 +10,14 @@ import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizer;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerListener;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerResponse;
+import com.example.airoleplaying.config.AiStreamingProperties;
+import com.example.airoleplaying.config.PrerenderProperties;
 import com.example.airoleplaying.model.CharacterProfile;
 import com.example.airoleplaying.model.WebSocketMessageEntity;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
@@ -24,11 +26,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -42,7 +49,13 @@ import java.util.HashMap;
 public class StreamingVoiceService {
     private final SpeechAiService service;
     private final CharacterService characterService;
-    private final ChatClient dashScopeChatClient;
+    private final TtsAudioCache ttsAudioCache;
+    private final PrerenderedAudioService prerenderedAudioService;
+    private final PrerenderProperties prerenderProperties;
+    private final FillerAudioService fillerAudioService;
+    private final RolePlayChatService rolePlayChatService;
+    private final AiStreamingProperties aiStreamingProperties;
+    private final SpeculativeResponseService speculativeResponseService;
     private final ObjectMapper om;
     private final ExecutorService executorService = Executors.newCachedThreadPool();
     private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1);
@@ -141,14 +154,17 @@ public class StreamingVoiceService {
 
         // 初始化语音转录器
         try {
-            context.transcriber = new SpeechTranscriber(service.getClient(), createTranscriberListener(sessionId));
+            context.asrLease = service.acquireClient(sessionId);
+            context.transcriber = new SpeechTranscriber(context.asrLease.client(), createTranscriberListener(sessionId));
             context.transcriber.setAppKey(service.getAlibabaCloudProperties().getAsr().getAppKey());
             context.transcriber.setFormat(InputFormatEnum.PCM);
             context.transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_8K);
             context.transcriber.setEnableIntermediateResult(true); // 启用中间结果
             context.transcriber.setEnablePunctuation(true);
             context.transcriber.setEnableITN(false);
+            long start = System.currentTimeMillis();
             context.transcriber.start();
+            context.asrLease.started(start);
 
             activeSessions.put(sessionId, context);
             
@@ -156,9 +172,11 @@ public class StreamingVoiceService {
             startKeepAliveTimer(sessionId);
             
             sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "服务器连接成功，请点击麦克风按钮开始说话"));
+            sendGreeting(sessionId, characterId);
 
         } catch (Exception e) {
             log.error("启动语音会话失败: {}", e.getMessage(), e);
+            releaseAsrLease(context);
             sendMessage(sessionId, WebSocketMessageEntity.createError(sessionId, "启动语音会话失败: " + e.getMessage()));
         }
     }
@@ -256,6 +274,7 @@ public class StreamingVoiceService {
         log.info("结束语音会话: {}", sessionId);
 
         SessionContext context = activeSessions.remove(sessionId);
+        speculativeResponseService.discard(sessionId);
         if (context != null) {
             try {
                 log.info("[endVoiceSession] 停止保持连接定时器: {}", sessionId);
@@ -276,6 +295,7 @@ public class StreamingVoiceService {
                         log.warn("关闭转录器失败: {}", e.getMessage());
                     }
                 }
+                releaseAsrLease(context);
                 // 注意：synthesizer字段已移除，每次合成时创建新实例，无需在此处关闭
                 // 检查WebSocket连接状态
                 if (context.webSocketSession != null && context.webSocketSession.isOpen()) {
@@ -300,6 +320,11 @@ public class StreamingVoiceService {
                 if (text != null && !text.trim().isEmpty()) {
                     sendMessage(sessionId, WebSocketMessageEntity.createTranscriptionResult(sessionId, text, false));
                     log.debug("中间转录结果: {}", text);
+                    // 中间结果稳定后提前推测AI回复
+                    SessionContext context = activeSessions.get(sessionId);
+                    if (context != null && !context.aiTriggered) {
+                        speculativeResponseService.onPartial(sessionId, context.characterId, context.activeSkill, text);
+                    }
                 }
             }
 
@@ -465,15 +490,19 @@ public class StreamingVoiceService {
                 log.warn("[startTranscriber] 关闭旧转录器失败: {}", e.getMessage());
             }
         }
+        releaseAsrLease(context);
         try {
-            context.transcriber = new SpeechTranscriber(service.getClient(), createTranscriberListener(sessionId));
+            context.asrLease = service.acquireClient(sessionId);
+            context.transcriber = new SpeechTranscriber(context.asrLease.client(), createTranscriberListener(sessionId));
             context.transcriber.setAppKey(service.getAlibabaCloudProperties().getAsr().getAppKey());
             context.transcriber.setFormat(InputFormatEnum.PCM);
             context.transcriber.setSampleRate(SampleRateEnum.SAMPLE_RATE_8K);
             context.transcriber.setEnableIntermediateResult(true);
             context.transcriber.setEnablePunctuation(true);
             context.transcriber.setEnableITN(false);
+            long start = System.currentTimeMillis();
             context.transcriber.start();
+            context.asrLease.started(start);
             context.aiTriggered = false;
             startKeepAliveTimer(sessionId);
             sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "ASR已启动，可以说话"));
@@ -539,6 +568,7 @@ public class StreamingVoiceService {
             } finally {
                 // 确保清理资源
                 context.transcriber = null;
+                releaseAsrLease(context);
                 // 确保定时器已停止
                 stopKeepAliveTimer(sessionId);
             }
@@ -561,6 +591,7 @@ public class StreamingVoiceService {
             String oldCharacterId = context.characterId;
             context.characterId = newCharacterId;
             context.character = characterService.getCharacterProfile(newCharacterId);
+            context.activeSkill = null;
             
             log.info("[changeCharacter] 角色切换成功: {} -> {}", oldCharacterId, newCharacterId);
             sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, 
@@ -581,20 +612,40 @@ public class StreamingVoiceService {
             return;
         }
 
+        // 领取与最终识别结果一致的推测回复
+        CompletableFuture<String> speculative = speculativeResponseService.claim(sessionId, context.characterId,
+                context.activeSkill, userText);
+
+        // 记录本轮开始时间，预计首段语音会超时时立即播放填充语音
+        context.turnStartTime = System.currentTimeMillis();
+        context.fillerSentTime = 0;
+        context.awaitingFirstAudio = true;
+        if (fillerAudioService.shouldPlayFiller(context.characterId)) {
+            byte[] filler = fillerAudioService.pickFiller(context.characterId);
+            if (filler != null) {
+                sendMessage(sessionId, WebSocketMessageEntity.createFillerAudio(sessionId,
+                        Base64.getEncoder().encodeToString(filler)));
+                context.fillerSentTime = System.currentTimeMillis();
+            }
+        }
+
         executorService.submit(() -> {
             try {
                 sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "AI正在思考中..."));
 
-                // 获取AI最终回复
-                String aiResponse = dashScopeChatClient
-                        .prompt()
-                        .system(context.character.getPersonality())
-                        .user(userText)
-                        .call()
-                        .content();
-
-                // 立即发送AI文字回复
-                sendMessage(sessionId, WebSocketMessageEntity.createAiResponse(sessionId, aiResponse, false));
+                // 获取AI回复，以WebSocket会话ID作为对话ID隔离上下文
+                String aiResponse = speculative == null ? null : awaitSpeculativeResponse(sessionId, speculative);
+                if (aiResponse != null) {
+                    log.info("使用推测回复, sessionId={}", sessionId);
+                } else if (aiStreamingProperties.isEnabled()) {
+                    // 增量推送AI文字回复，最终消息携带完整文本
+                    aiResponse = streamAiResponse(sessionId, context, userText);
+                } else {
+                    aiResponse = rolePlayChatService.call(context.characterId, sessionId, userText,
+                            ResponseChannel.VOICE, context.activeSkill);
+                    // 立即发送AI文字回复
+                    sendMessage(sessionId, WebSocketMessageEntity.createAiResponse(sessionId, aiResponse, false));
+                }
                 
                 // 发送语音合成开始状态
                 sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "正在生成语音回复..."));
@@ -610,52 +661,139 @@ public class StreamingVoiceService {
     }
 
 
+    /**
+     * 等待推测回复并整体推送；推测失败时返回null，由调用方按正常流程请求
+     */
+    private String awaitSpeculativeResponse(String sessionId, CompletableFuture<String> speculative) {
+        long startTime = System.currentTimeMillis();
+        String text;
+        try {
+            text = speculative.get();
+        } catch (Exception e) {
+            log.warn("推测回复不可用，改为正常请求: {}", e.getMessage());
+            return null;
+        }
+        if (text == null) {
+            return null;
+        }
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("characters", text.length());
+        usage.put("estimatedTokens", TokenEstimator.estimate(text));
+        usage.put("speculative", true);
+        usage.put("durationMs", System.currentTimeMillis() - startTime);
+        sendMessage(sessionId, WebSocketMessageEntity.createAiResponseComplete(sessionId, text, usage));
+        return text;
+    }
+
+    /**
+     * 流式获取AI回复：合并窗口内到达的token为一帧增量推送，完成后发送携带完整文本和用量统计的最终消息
+     * 用量取自模型返回的统计；命中缓存或合并进其他请求而没有模型用量时，改用本地估算
+     */
+    private String streamAiResponse(String sessionId, SessionContext context, String userText) {
+        long startTime = System.currentTimeMillis();
+        StringBuilder fullText = new StringBuilder();
+        AtomicInteger frames = new AtomicInteger();
+        AtomicLong firstFrameTime = new AtomicLong();
+        AtomicReference<Usage> modelUsage = new AtomicReference<>();
+        rolePlayChatService.stream(context.characterId, sessionId, userText, ResponseChannel.VOICE,
+                        context.activeSkill, modelUsage::set)
+                .bufferTimeout(Math.max(1, aiStreamingProperties.getMaxChunksPerFrame()),
+                        aiStreamingProperties.getCoalesceWindow())
+                .map(chunks -> String.join("", chunks))
+                .filter(delta -> !delta.isEmpty())
+                .doOnNext(delta -> {
+                    firstFrameTime.compareAndSet(0, System.currentTimeMillis());
+                    fullText.append(delta);
+                    frames.incrementAndGet();
+                    sendMessage(sessionId, WebSocketMessageEntity.createAiResponse(sessionId, delta, true));
+                })
+                .blockLast();
+
+        String text = fullText.toString();
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("characters", text.length());
+        Usage reported = modelUsage.get();
+        if (reported != null) {
+            usage.put("promptTokens", reported.getPromptTokens());
+            usage.put("completionTokens", reported.getCompletionTokens());
+            usage.put("totalTokens", reported.getTotalTokens());
+        } else {
+            usage.put("estimatedTokens", TokenEstimator.estimate(text));
+        }
+        usage.put("frames", frames.get());
+        usage.put("firstFrameMs", firstFrameTime.get() == 0 ? null : firstFrameTime.get() - startTime);
+        usage.put("durationMs", System.currentTimeMillis() - startTime);
+        sendMessage(sessionId, WebSocketMessageEntity.createAiResponseComplete(sessionId, text, usage));
+        return text;
+    }
+
     /**
      * 触发语音合成
+     * 发音人取自会话当前角色，合成任务进入该发音人的专属队列；缓存命中时不占用合成名额
      */
     private void triggerAudioSynthesis(String sessionId, String text) {
         SessionContext context = activeSessions.get(sessionId);
         if (context == null) {
             return;
         }
-        executorService.submit(() -> {
-            SpeechSynthesizer synthesizer = null;
-            try {
+        String voice = service.resolveVoice(context.character != null ? context.character.getVoice() : null);
+        String cacheKey = service.ttsCacheKey(text, voice);
+        byte[] cachedAudio = ttsAudioCache.get(cacheKey);
+        if (cachedAudio != null) {
+            // 缓存命中，按与实时合成相同的消息顺序推送
+            log.debug("[triggerAudioSynthesis] TTS缓存命中: {} bytes", cachedAudio.length);
+            executorService.submit(() -> {
                 sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "正在生成语音回复..."));
-                synthesizer = new SpeechSynthesizer(service.getClient(), createTtsListener(sessionId));
-                synthesizer.setAppKey(service.getAlibabaCloudProperties().getTts().getAppKey());
-                synthesizer.setFormat(OutputFormatEnum.WAV);
-                synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-                synthesizer.setVoice(service.getAlibabaCloudProperties().getTts().getVoice());
-                synthesizer.setPitchRate(100);
-                synthesizer.setSpeechRate(100);
-                synthesizer.setText(text);
-                synthesizer.addCustomedParam("enable_subtitle", false);
-                
-                // 将合成器存储到会话上下文中，以便后续停止
-                context.synthesizer = synthesizer;
-                
-                synthesizer.start();
-                synthesizer.waitForComplete();
-            } catch (Exception e) {
-                log.error("语音合成失败: {}", e.getMessage(), e);
-                sendMessage(sessionId, WebSocketMessageEntity.createError(sessionId, "语音合成失败: " + e.getMessage()));
-            } finally {
-                if (synthesizer != null) {
-                    try { synthesizer.close(); } catch (Exception e) { log.warn("关闭合成器失败: {}", e.getMessage()); }
+                sendSynthesizedAudio(sessionId, cachedAudio);
+            });
+            return;
+        }
+        sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "正在生成语音回复..."));
+        try {
+            service.submitSynthesis(voice, () -> {
+                SpeechSynthesizer synthesizer = null;
+                NlsClientManager.Lease lease = service.acquireClient(sessionId);
+                try {
+                    synthesizer = new SpeechSynthesizer(lease.client(), createTtsListener(sessionId, cacheKey));
+                    synthesizer.setAppKey(service.getAlibabaCloudProperties().getTts().getAppKey());
+                    synthesizer.setFormat(OutputFormatEnum.WAV);
+                    synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
+                    synthesizer.setVoice(voice);
+                    synthesizer.setPitchRate(100);
+                    synthesizer.setSpeechRate(100);
+                    synthesizer.setText(text);
+                    synthesizer.addCustomedParam("enable_subtitle", false);
+
+                    // 将合成器存储到会话上下文中，以便后续停止
+                    context.synthesizer = synthesizer;
+
+                    long start = System.currentTimeMillis();
+                    synthesizer.start();
+                    lease.started(start);
+                    synthesizer.waitForComplete();
+                } catch (Exception e) {
+                    log.error("语音合成失败: {}", e.getMessage(), e);
+                    sendMessage(sessionId, WebSocketMessageEntity.createError(sessionId, "语音合成失败: " + e.getMessage()));
+                } finally {
+                    if (synthesizer != null) {
+                        try { synthesizer.close(); } catch (Exception e) { log.warn("关闭合成器失败: {}", e.getMessage()); }
+                    }
+                    lease.release();
+                    // 清除会话上下文中的合成器引用
+                    context.synthesizer = null;
+                    // ASR已在句子结束时关闭，无需再次关闭
+                    log.debug("[triggerAudioSynthesis] 语音合成完成，ASR已提前关闭");
                 }
-                // 清除会话上下文中的合成器引用
-                context.synthesizer = null;
-                // ASR已在句子结束时关闭，无需再次关闭
-                log.debug("[triggerAudioSynthesis] 语音合成完成，ASR已提前关闭");
-            }
-        });
+            });
+        } catch (RejectedExecutionException e) {
+            sendMessage(sessionId, WebSocketMessageEntity.createError(sessionId, "语音合成繁忙，请稍后重试"));
+        }
     }
 
     /**
      * 创建TTS监听器
      */
-    private SpeechSynthesizerListener createTtsListener(String sessionId) {
+    private SpeechSynthesizerListener createTtsListener(String sessionId, String cacheKey) {
         return new SpeechSynthesizerListener() {
             private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
@@ -664,9 +802,8 @@ public class StreamingVoiceService {
                 try {
                     baos.close();
                     byte[] audioBytes = baos.toByteArray();
-                    String audioData = Base64.getEncoder().encodeToString(audioBytes);
-                    sendMessage(sessionId, WebSocketMessageEntity.createAudioSynthesis(sessionId, audioData, true));
-                    sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "语音合成完成"));
+                    ttsAudioCache.put(cacheKey, audioBytes);
+                    sendSynthesizedAudio(sessionId, audioBytes);
                     log.info("语音合成完成: {}", response.getName());
                 } catch (Exception e) {
                     log.error("处理合成音频失败: {}", e.getMessage(), e);
@@ -696,6 +833,25 @@ public class StreamingVoiceService {
         };
     }
 
+    /**
+     * 推送合成完成的音频
+     */
+    private void sendSynthesizedAudio(String sessionId, byte[] audioBytes) {
+        SessionContext context = activeSessions.get(sessionId);
+        if (context != null && context.awaitingFirstAudio) {
+            // 统计本轮实际时延与感知时延
+            context.awaitingFirstAudio = false;
+            long now = System.currentTimeMillis();
+            boolean fillerPlayed = context.fillerSentTime > 0;
+            long actual = now - context.turnStartTime;
+            long perceived = fillerPlayed ? context.fillerSentTime - context.turnStartTime : actual;
+            fillerAudioService.recordTurn(context.characterId, actual, perceived, fillerPlayed);
+        }
+        String audioData = Base64.getEncoder().encodeToString(audioBytes);
+        sendMessage(sessionId, WebSocketMessageEntity.createAudioSynthesis(sessionId, audioData, true));
+        sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, "语音合成完成"));
+    }
+
     /**
      * 停止TTS合成
      */
@@ -747,12 +903,21 @@ public class StreamingVoiceService {
             // 发送技能使用状态
             sendMessage(sessionId, WebSocketMessageEntity.createStatus(sessionId, 
                 String.format("正在使用技能: %s", skill)));
+
+            // 后续对话使用该技能的系统提示词变体
+            context.activeSkill = skill;
             
-            // 模拟技能使用（这里可以根据具体需求实现不同的技能逻辑）
-            String skillResponse = generateSkillResponse(character, skill);
-            
-            // 发送技能响应
-            sendMessage(sessionId, WebSocketMessageEntity.createSkillResponse(sessionId, skill, skillResponse));
+            // 优先使用启动时预渲染的文本和音频，无需调用上游
+            PrerenderedAudioService.RenderedAudio prerendered =
+                    prerenderedAudioService.getSkillAudio(context.characterId, skill);
+            if (prerendered != null) {
+                sendMessage(sessionId, WebSocketMessageEntity.createSkillResponse(sessionId, skill, prerendered.text()));
+                sendSynthesizedAudio(sessionId, prerendered.audio());
+            } else {
+                String skillResponse = prerenderedAudioService.renderSkillText(character, skill);
+                sendMessage(sessionId, WebSocketMessageEntity.createSkillResponse(sessionId, skill, skillResponse));
+                triggerAudioSynthesis(sessionId, skillResponse);
+            }
             
             log.info("技能使用成功: sessionId={}, character={}, skill={}", 
                 sessionId, character.getName(), skill);
@@ -765,33 +930,16 @@ public class StreamingVoiceService {
     }
 
     /**
-     * 生成技能响应
+     * 推送预渲染的角色问候语（未就绪时跳过，不触发上游调用）
      */
-    private String generateSkillResponse(CharacterProfile character, String skill) {
-        // 根据技能类型生成不同的响应
-        switch (skill) {
-            case "知识问答":
-                return String.format("作为%s，我很乐意回答您的知识性问题。请告诉我您想了解什么？", character.getName());
-            case "情感支持":
-                return String.format("作为%s，我会用心倾听您的心声，给您温暖的支持和安慰。", character.getName());
-            case "语言学习":
-                return String.format("作为%s，我可以帮助您学习语言，提供语法指导和表达建议。", character.getName());
-            case "专业咨询":
-                return String.format("作为%s，我可以为您提供专业领域的建议和指导。", character.getName());
-            case "创意写作":
-                return String.format("作为%s，我可以帮助您进行创意写作，提供灵感和创作指导。", character.getName());
-            case "历史讲解":
-                return String.format("作为%s，我可以生动地为您讲解历史事件和人物。", character.getName());
-            case "哲学思辨":
-                return String.format("作为%s，我可以引导您进行哲学思考，探讨人生和世界的深层问题。", character.getName());
-            case "文学赏析":
-                return String.format("作为%s，我可以深入分析文学作品，提升您的文学素养。", character.getName());
-            case "科学探索":
-                return String.format("作为%s，我可以用通俗易懂的方式解释科学原理，激发您对科学的兴趣。", character.getName());
-            case "艺术指导":
-                return String.format("作为%s，我可以提供艺术创作指导，培养您的艺术修养。", character.getName());
-            default:
-                return String.format("作为%s，我准备使用%s技能为您服务。", character.getName(), skill);
+    private void sendGreeting(String sessionId, String characterId) {
+        if (!prerenderProperties.isGreetingOnSessionStart()) {
+            return;
+        }
+        PrerenderedAudioService.RenderedAudio greeting = prerenderedAudioService.getGreetingAudio(characterId);
+        if (greeting != null) {
+            sendMessage(sessionId, WebSocketMessageEntity.createAiResponse(sessionId, greeting.text(), false));
+            sendSynthesizedAudio(sessionId, greeting.audio());
         }
     }
 
@@ -810,6 +958,16 @@ public class StreamingVoiceService {
         }
     }
 
+    /**
+     * 释放转录器占用的客户端分片
+     */
+    private void releaseAsrLease(SessionContext context) {
+        if (context.asrLease != null) {
+            context.asrLease.release();
+            context.asrLease = null;
+        }
+    }
+
     /**
      * 会话上下文
      */
@@ -819,8 +977,13 @@ public class StreamingVoiceService {
         String characterId;
         CharacterProfile character;
         SpeechTranscriber transcriber;
+        NlsClientManager.Lease asrLease; // 转录器占用的客户端分片
         SpeechSynthesizer synthesizer; // TTS合成器
         long lastActivityTime; // 最后活动时间，用于超时检测
         boolean aiTriggered = false; // 标记本轮是否已触发AI，防止多次触发
+        volatile long turnStartTime; // 本轮用户说完话的时间
+        volatile long fillerSentTime; // 本轮填充语音发送时间，0表示未发送
+        volatile boolean awaitingFirstAudio; // 本轮是否尚未发送首段真实语音
+        volatile String activeSkill; // 当前使用的技能，影响系统提示词
     }
 }
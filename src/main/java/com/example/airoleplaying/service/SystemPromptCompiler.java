@@ -0,0 +1,192 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.SystemPromptProperties;
+import com.example.airoleplaying.model.CharacterProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 角色系统提示词编译服务
+ * 将完整的角色配置（性格、背景、专业领域、口头禅、技能等）编译为不可变的系统提示词并缓存，
+ * 每个技能另有一个变体。请求时只需查表，且同一角色的提示词前缀逐字节一致，便于上游前缀缓存。
+ * 角色配置变更时失效重编译。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SystemPromptCompiler {
+    private static final String ROLE_RULE = "请始终保持以上角色身份，用符合角色的语气和口吻与用户交流。";
+
+    private final SystemPromptProperties properties;
+
+    // 角色ID -> 编译结果
+    private final ConcurrentHashMap<String, CompiledPrompt> compiled = new ConcurrentHashMap<>();
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong droppedSections = new AtomicLong();
+
+    /**
+     * 获取角色的系统提示词
+     */
+    public String systemPrompt(String characterId, CharacterProfile profile) {
+        return systemPrompt(characterId, profile, null);
+    }
+
+    /**
+     * 获取角色的系统提示词
+     *
+     * @param characterId 角色ID
+     * @param profile 角色配置
+     * @param skill 当前使用的技能，为null或角色不具备该技能时返回基础提示词
+     * @return 系统提示词
+     */
+    public String systemPrompt(String characterId, CharacterProfile profile, String skill) {
+        CompiledPrompt prompt = compiled.get(characterId);
+        // 配置对象被替换或更新时间变化时视为新版本
+        if (prompt == null || prompt.profile != profile || !Objects.equals(prompt.updatedAt, profile.getUpdatedAt())) {
+            prompt = compile(profile);
+            compiled.put(characterId, prompt);
+            compilations.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        if (skill != null) {
+            String variant = prompt.skillVariants.get(skill);
+            if (variant != null) {
+                return variant;
+            }
+        }
+        return prompt.base;
+    }
+
+    /**
+     * 角色配置变更时清除编译结果
+     */
+    @EventListener
+    public void onCharacterProfileChanged(CharacterProfileChangedEvent event) {
+        compiled.remove(event.characterId());
+    }
+
+    /**
+     * 获取编译统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> tokens = new HashMap<>();
+        compiled.forEach((characterId, prompt) -> tokens.put(characterId, prompt.tokens));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tokenBudget", properties.getTokenBudget());
+        stats.put("compiled", compiled.size());
+        stats.put("compilations", compilations.get());
+        stats.put("hits", hits.get());
+        stats.put("droppedSections", droppedSections.get());
+        stats.put("promptTokens", tokens);
+        return stats;
+    }
+
+    /**
+     * 编译角色配置
+     * 段落按固定顺序拼接以保证前缀稳定；超出预算时按优先级从低到高舍弃段落
+     */
+    private CompiledPrompt compile(CharacterProfile profile) {
+        List<Section> sections = new ArrayList<>();
+        sections.add(new Section(0, profile.getPersonality()));
+        if (notBlank(profile.getBackground())) {
+            sections.add(new Section(1, "【背景】" + profile.getBackground()));
+        }
+        if (notBlank(profile.getExpertise())) {
+            sections.add(new Section(2, "【专业领域】" + profile.getExpertise()));
+        }
+        if (notBlank(profile.getMotto())) {
+            sections.add(new Section(3, "【口头禅】" + profile.getMotto() + "（可在合适时自然引用）"));
+        }
+        if (profile.getSkills() != null && !profile.getSkills().isEmpty()) {
+            sections.add(new Section(4, "【擅长技能】" + describeSkills(profile)));
+        }
+        if (notBlank(profile.getAppearance())) {
+            sections.add(new Section(5, "【形象】" + profile.getAppearance()));
+        }
+        sections.add(new Section(0, ROLE_RULE));
+
+        int budget = properties.getTokenBudget();
+        int maxPriority = 5;
+        String base = join(sections, maxPriority);
+        while (maxPriority > 0 && TokenEstimator.estimate(base) > budget) {
+            maxPriority--;
+            base = join(sections, maxPriority);
+            droppedSections.incrementAndGet();
+        }
+        if (maxPriority < 5) {
+            log.debug("角色 {} 的系统提示词超出token预算，仅保留优先级 <= {} 的段落", profile.getName(), maxPriority);
+        }
+
+        // 技能变体追加在基础提示词之后，保持前缀一致
+        Map<String, String> variants = new HashMap<>();
+        if (profile.getSkills() != null) {
+            for (String skill : profile.getSkills()) {
+                String description = profile.getSkillDescription(skill);
+                variants.put(skill, base + "\n【当前技能】" + skill
+                        + (notBlank(description) ? "：" + description : "")
+                        + "。请围绕该技能回应用户。");
+            }
+        }
+        return new CompiledPrompt(profile, profile.getUpdatedAt(), base, Map.copyOf(variants),
+                TokenEstimator.estimate(base));
+    }
+
+    private static String describeSkills(CharacterProfile profile) {
+        List<String> skills = new ArrayList<>(profile.getSkills().size());
+        for (String skill : profile.getSkills()) {
+            String description = profile.getSkillDescription(skill);
+            skills.add(notBlank(description) ? skill + "（" + description + "）" : skill);
+        }
+        return String.join("、", skills);
+    }
+
+    private static String join(List<Section> sections, int maxPriority) {
+        StringBuilder builder = new StringBuilder();
+        for (Section section : sections) {
+            if (section.priority > maxPriority || !notBlank(section.text)) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(section.text);
+        }
+        return builder.toString();
+    }
+
+    private static boolean notBlank(String text) {
+        return text != null && !text.isBlank();
+    }
+
+    /**
+     * 提示词段落，优先级数值越小越重要
+     */
+    private record Section(int priority, String text) {
+    }
+
+    /**
+     * 编译结果
+     *
+     * @param profile 编译时的角色配置对象
+     * @param updatedAt 编译时的角色更新时间
+     * @param base 基础系统提示词
+     * @param skillVariants 技能 -> 技能变体提示词
+     * @param tokens 基础提示词的token估算
+     */
+    private record CompiledPrompt(CharacterProfile profile, Long updatedAt, String base,
+                                  Map<String, String> skillVariants, int tokens) {
+    }
+}
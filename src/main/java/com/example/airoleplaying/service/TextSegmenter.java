@@ -0,0 +1,156 @@
+package com.example.airoleplaying.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合成文本分段工具
+ * 优先在句末标点处切分并将短句合并到上限以内；单句超过上限时在分句标点处切分，仍过长时在上限内最后一个空白处切分，
+ * 没有空白时按上限硬切（不拆开代理对）。只含标点的分段不会送去合成。
+ * 句末判断同时供流式合成（VoicePipelineService）使用。
+ */
+public final class TextSegmenter {
+    // 句末标点；英文句点另行判断，需后接空白或位于文本末尾，避免切开小数和缩写
+    private static final String SENTENCE_END = "。！？!?；;\n";
+    private static final String CLAUSE_END = "，,、：:";
+
+    private TextSegmenter() {
+    }
+
+    /**
+     * 判断 index 处的字符是否为句末
+     */
+    public static boolean isSentenceEnd(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (c == '.') {
+            return index + 1 == text.length() || Character.isWhitespace(text.charAt(index + 1));
+        }
+        return SENTENCE_END.indexOf(c) >= 0;
+    }
+
+    /**
+     * 判断流式缓冲的文本是否刚结束一句：末尾为句末标点，或英文句点之后刚到达空白
+     * 末尾的英文句点要等下一个字符到达后才能确定是否为句末
+     */
+    public static boolean endsSentence(CharSequence buffer) {
+        int last = buffer.length() - 1;
+        if (last < 0) {
+            return false;
+        }
+        char c = buffer.charAt(last);
+        if (c == '.') {
+            return false;
+        }
+        if (SENTENCE_END.indexOf(c) >= 0) {
+            return true;
+        }
+        return last > 0 && Character.isWhitespace(c) && buffer.charAt(last - 1) == '.';
+    }
+
+    /**
+     * 判断文本是否包含可朗读的内容（字母、汉字或数字），只含标点和空白的文本不送去合成
+     */
+    public static boolean isSpeakable(CharSequence text) {
+        return text.codePoints().anyMatch(Character::isLetterOrDigit);
+    }
+
+    /**
+     * 切分文本
+     *
+     * @param text 文本
+     * @param maxChars 单段最大字符数
+     * @return 按顺序排列的非空分段
+     */
+    public static List<String> split(String text, int maxChars) {
+        int limit = Math.max(1, maxChars);
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String sentence : splitSentences(text)) {
+            for (String piece : sentence.length() > limit ? splitClauses(sentence, limit) : List.of(sentence)) {
+                if (current.length() > 0 && current.length() + piece.length() > limit) {
+                    add(segments, current);
+                }
+                current.append(piece);
+            }
+        }
+        add(segments, current);
+        return segments;
+    }
+
+    private static List<String> splitClauses(String sentence, int limit) {
+        List<String> pieces = new ArrayList<>();
+        for (String clause : splitAfter(sentence, CLAUSE_END)) {
+            int start = 0;
+            while (clause.length() - start > limit) {
+                int end = hardCut(clause, start, limit);
+                pieces.add(clause.substring(start, end));
+                start = end;
+            }
+            if (start < clause.length()) {
+                pieces.add(clause.substring(start));
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * 超长分句的切分位置：上限内最后一个空白之后；没有空白时取上限处，但不拆开代理对
+     */
+    private static int hardCut(String clause, int start, int limit) {
+        int end = start + limit;
+        for (int i = end - 1; i > start; i--) {
+            if (Character.isWhitespace(clause.charAt(i))) {
+                return i + 1;
+            }
+        }
+        if (Character.isHighSurrogate(clause.charAt(end - 1)) && Character.isLowSurrogate(clause.charAt(end))
+                && end - 1 > start) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 在句末之后切分，句末标点保留在前一句末尾
+     */
+    private static List<String> splitSentences(String text) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isSentenceEnd(text, i)) {
+                parts.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            parts.add(text.substring(start));
+        }
+        return parts;
+    }
+
+    /**
+     * 在分隔符之后切分，分隔符保留在前一段末尾
+     */
+    private static List<String> splitAfter(String text, String delimiters) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (delimiters.indexOf(text.charAt(i)) >= 0) {
+                parts.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            parts.add(text.substring(start));
+        }
+        return parts;
+    }
+
+    private static void add(List<String> segments, StringBuilder current) {
+        String segment = current.toString().trim();
+        if (isSpeakable(segment)) {
+            segments.add(segment);
+        }
+        current.setLength(0);
+    }
+}
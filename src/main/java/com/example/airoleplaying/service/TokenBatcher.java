@@ -0,0 +1,157 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.StreamBatchingProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式token合并刷新服务
+ * 将逐token到达的流合并为较大的片段再写出，减少servlet写入、flush和小TCP包的数量：
+ * 首个token立即写出以保证首字时延，之后每隔 flushInterval 或缓冲达到 maxChars 字符时写出，
+ * 流结束时写出剩余内容。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenBatcher {
+    private final StreamBatchingProperties properties;
+
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong tokensIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong sizeFlushes = new AtomicLong();
+    private final AtomicLong timerFlushes = new AtomicLong();
+
+    /**
+     * 按配置合并流
+     */
+    public Flux<String> batch(Flux<String> source) {
+        if (!properties.isEnabled()) {
+            return source;
+        }
+        return batch(source, properties.getFlushInterval(), properties.getMaxChars());
+    }
+
+    /**
+     * 合并流
+     *
+     * @param source 逐token的流
+     * @param flushInterval 最长刷新间隔
+     * @param maxChars 缓冲字符数上限
+     * @return 合并后的流
+     */
+    public Flux<String> batch(Flux<String> source, Duration flushInterval, int maxChars) {
+        return Flux.create(sink -> {
+            streams.incrementAndGet();
+            Batch batch = new Batch(sink, flushInterval.toMillis(), Math.max(1, maxChars));
+            Disposable upstream = source.subscribe(batch::onNext, batch::onError, batch::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                batch.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * 获取合并统计信息：每帧平均token数即写出次数的缩减倍数
+     */
+    public Map<String, Object> getStatistics() {
+        long frames = framesOut.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("flushIntervalMs", properties.getFlushInterval().toMillis());
+        stats.put("maxChars", properties.getMaxChars());
+        stats.put("streams", streams.get());
+        stats.put("tokensIn", tokensIn.get());
+        stats.put("framesOut", frames);
+        stats.put("sizeFlushes", sizeFlushes.get());
+        stats.put("timerFlushes", timerFlushes.get());
+        stats.put("writesSaved", tokensIn.get() - frames);
+        stats.put("tokensPerFrame", frames == 0 ? 0.0 : (double) tokensIn.get() / frames);
+        return stats;
+    }
+
+    /**
+     * 单个流的合并状态
+     */
+    private class Batch {
+        private final FluxSink<String> sink;
+        private final long flushIntervalMs;
+        private final int maxChars;
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean firstSent;
+        private Disposable timer;
+
+        Batch(FluxSink<String> sink, long flushIntervalMs, int maxChars) {
+            this.sink = sink;
+            this.flushIntervalMs = flushIntervalMs;
+            this.maxChars = maxChars;
+        }
+
+        synchronized void onNext(String token) {
+            tokensIn.incrementAndGet();
+            if (!firstSent) {
+                // 首个token立即写出
+                firstSent = true;
+                emit(token);
+                return;
+            }
+            buffer.append(token);
+            if (buffer.length() >= maxChars) {
+                sizeFlushes.incrementAndGet();
+                flush();
+            } else if (timer == null) {
+                timer = Schedulers.parallel().schedule(this::onTimer, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void onComplete() {
+            flush();
+            sink.complete();
+        }
+
+        synchronized void onError(Throwable error) {
+            flush();
+            sink.error(error);
+        }
+
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        private synchronized void onTimer() {
+            timer = null;
+            if (buffer.length() > 0) {
+                timerFlushes.incrementAndGet();
+                flush();
+            }
+        }
+
+        private void flush() {
+            cancelTimer();
+            if (buffer.length() > 0) {
+                emit(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+
+        private void emit(String frame) {
+            framesOut.incrementAndGet();
+            sink.next(frame);
+        }
+    }
+}
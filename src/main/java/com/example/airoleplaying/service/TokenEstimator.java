@@ -0,0 +1,305 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.TokenBudgetProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地Token估算服务
+ * 无需请求模型即可估算中英混合文本的token数，供历史裁剪、分渠道回复上限和用量统计使用。
+ * 估算误差通过样本语料（参考token数与语料一同提交，校验不调用模型）和线上回复的实际用量持续校验。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenEstimator {
+    // 以0.1个token为单位累加，避免浮点运算
+    private static final int UNIT = 10;
+    // 约1.4个汉字对应1个token
+    private static final int HAN_UNITS = 7;
+    // 拉丁扩展、西里尔等其他字母约2个字符1个token
+    private static final int OTHER_LETTER_UNITS = 5;
+    // 英文单词约6个字母1个token
+    private static final int LETTERS_PER_TOKEN = 6;
+
+    private final TokenBudgetProperties properties;
+    private final ResourceLoader resourceLoader;
+
+    private final Map<ResponseChannel, ChannelUsage> usage = new EnumMap<>(ResponseChannel.class);
+
+    // 线上回复的估算误差
+    private final AtomicLong liveSamples = new AtomicLong();
+    private final AtomicLong liveErrorPermille = new AtomicLong();
+    private final AtomicLong liveMaxErrorPermille = new AtomicLong();
+
+    // 语料校验结果
+    private volatile Map<String, Object> corpusValidation = Map.of("validated", false);
+
+    {
+        for (ResponseChannel channel : ResponseChannel.values()) {
+            usage.put(channel, new ChannelUsage());
+        }
+    }
+
+    /**
+     * 估算文本的token数
+     * 逐字符扫描，不分配对象：汉字约0.7个token，英文按单词长度折算，数字和标点各计1个，
+     * 空白并入相邻词元，连续换行计1个。
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int length = text.length();
+        int units = 0;
+        int wordLength = 0;
+        boolean inNewline = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                wordLength++;
+                inNewline = false;
+                continue;
+            }
+            if (wordLength > 0) {
+                units += wordUnits(wordLength);
+                wordLength = 0;
+            }
+            if (c == '\n') {
+                if (!inNewline) {
+                    units += UNIT;
+                }
+                inNewline = true;
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                continue;
+            }
+            inNewline = false;
+            if (c < 0x80) {
+                // 数字与ASCII标点
+                units += UNIT;
+            } else if (Character.isHighSurrogate(c)) {
+                // 表情等辅助平面字符通常被拆成多个字节级token
+                units += 2 * UNIT;
+                if (i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    i++;
+                }
+            } else if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                units += HAN_UNITS;
+            } else if (Character.isLetter(c) && c < 0x2E80) {
+                units += OTHER_LETTER_UNITS;
+            } else {
+                // 假名、谚文、全角标点等
+                units += UNIT;
+            }
+        }
+        if (wordLength > 0) {
+            units += wordUnits(wordLength);
+        }
+        return (units + UNIT - 1) / UNIT;
+    }
+
+    private static int wordUnits(int wordLength) {
+        return UNIT * (1 + (wordLength - 1) / LETTERS_PER_TOKEN);
+    }
+
+    /**
+     * 获取渠道的回复token上限
+     */
+    public int maxResponseTokens(ResponseChannel channel) {
+        return channel == ResponseChannel.VOICE ? properties.getVoiceMaxTokens() : properties.getTextMaxTokens();
+    }
+
+    /**
+     * 记录一次回复的用量
+     *
+     * @param channel 回复渠道
+     * @param response 回复文本
+     * @param actual 模型返回的用量，流式回复等无用量时为null
+     */
+    public void recordResponse(ResponseChannel channel, String response, Usage actual) {
+        int estimated = estimate(response);
+        ChannelUsage channelUsage = usage.get(channel);
+        channelUsage.requests.incrementAndGet();
+        channelUsage.estimatedCompletionTokens.addAndGet(estimated);
+        if (actual == null || actual.getCompletionTokens() == null || actual.getCompletionTokens() <= 0) {
+            return;
+        }
+        int completionTokens = actual.getCompletionTokens();
+        channelUsage.measuredRequests.incrementAndGet();
+        channelUsage.completionTokens.addAndGet(completionTokens);
+        if (actual.getPromptTokens() != null) {
+            channelUsage.promptTokens.addAndGet(actual.getPromptTokens());
+        }
+        long errorPermille = Math.abs(estimated - completionTokens) * 1000L / completionTokens;
+        liveSamples.incrementAndGet();
+        liveErrorPermille.addAndGet(errorPermille);
+        liveMaxErrorPermille.accumulateAndGet(errorPermille, Math::max);
+    }
+
+    /**
+     * 应用启动完成后校验估算误差
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void validateOnStartup() {
+        if (properties.isValidateOnStartup()) {
+            validateCorpus();
+        }
+    }
+
+    /**
+     * 用样本语料校验估算误差
+     * 参考token数来自随语料提交的参考文件，校验只做本地计算，不调用模型；缺少参考值的样本跳过并计数。
+     */
+    public Map<String, Object> validateCorpus() {
+        try {
+            List<String> samples = loadCorpus();
+            Map<String, Integer> references = loadReferences();
+
+            long errorPermilleSum = 0;
+            long maxErrorPermille = 0;
+            int count = 0;
+            int missing = 0;
+            for (String sample : samples) {
+                Integer reference = references.get(sample);
+                if (reference == null || reference <= 0) {
+                    missing++;
+                    continue;
+                }
+                long errorPermille = Math.abs(estimate(sample) - reference) * 1000L / reference;
+                errorPermilleSum += errorPermille;
+                maxErrorPermille = Math.max(maxErrorPermille, errorPermille);
+                count++;
+            }
+            double meanError = count == 0 ? 0.0 : errorPermilleSum / 1000.0 / count;
+            Map<String, Object> result = new HashMap<>();
+            result.put("validated", count > 0);
+            result.put("samples", count);
+            result.put("missingReferences", missing);
+            result.put("meanError", meanError);
+            result.put("maxError", maxErrorPermille / 1000.0);
+            result.put("errorBound", properties.getErrorBound());
+            // 没有可比较的样本时无法判断误差是否达标
+            result.put("withinBound", count > 0 && meanError <= properties.getErrorBound());
+            result.put("timestamp", System.currentTimeMillis());
+            corpusValidation = result;
+            if (missing > 0) {
+                log.warn("Token估算语料中 {} 条样本缺少参考token数: {}", missing, properties.getReference());
+            }
+            if (count == 0) {
+                log.warn("Token估算未校验：语料 {} 条样本均无参考token数，请用模型分词器生成 {}",
+                        samples.size(), properties.getReference());
+            } else if (meanError > properties.getErrorBound()) {
+                log.warn("Token估算平均误差 {} 超出允许范围 {}，样本数: {}", meanError, properties.getErrorBound(), count);
+            } else {
+                log.info("Token估算校验完成，样本数: {}, 平均误差: {}, 最大误差: {}", count, meanError, maxErrorPermille / 1000.0);
+            }
+            return result;
+        } catch (Exception e) {
+            log.warn("Token估算语料校验失败: {}", e.getMessage());
+            Map<String, Object> result = new HashMap<>();
+            result.put("validated", false);
+            result.put("error", e.getMessage());
+            corpusValidation = result;
+            return result;
+        }
+    }
+
+    /**
+     * 获取token用量与估算误差统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> channels = new HashMap<>();
+        usage.forEach((channel, channelUsage) -> channels.put(channel.name().toLowerCase(), channelUsage.toMap(
+                maxResponseTokens(channel))));
+
+        long samples = liveSamples.get();
+        Map<String, Object> live = new HashMap<>();
+        live.put("samples", samples);
+        live.put("meanError", samples == 0 ? 0.0 : liveErrorPermille.get() / 1000.0 / samples);
+        live.put("maxError", liveMaxErrorPermille.get() / 1000.0);
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("channels", channels);
+        stats.put("liveValidation", live);
+        stats.put("corpusValidation", corpusValidation);
+        return stats;
+    }
+
+    private List<String> loadCorpus() throws IOException {
+        Resource resource = resourceLoader.getResource(properties.getCorpus());
+        List<String> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    samples.add(line);
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 读取参考文件：每行"token数<TAB>样本"，#开头为注释
+     */
+    private Map<String, Integer> loadReferences() throws IOException {
+        Resource resource = resourceLoader.getResource(properties.getReference());
+        Map<String, Integer> references = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0 && !line.startsWith("#")) {
+                    references.put(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab).trim()));
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * 单个渠道的用量统计
+     */
+    private static class ChannelUsage {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong measuredRequests = new AtomicLong();
+        final AtomicLong promptTokens = new AtomicLong();
+        final AtomicLong completionTokens = new AtomicLong();
+        final AtomicLong estimatedCompletionTokens = new AtomicLong();
+
+        Map<String, Object> toMap(int maxResponseTokens) {
+            long measured = measuredRequests.get();
+            Map<String, Object> map = new HashMap<>();
+            map.put("maxResponseTokens", maxResponseTokens);
+            map.put("requests", requests.get());
+            map.put("measuredRequests", measured);
+            map.put("promptTokens", promptTokens.get());
+            map.put("completionTokens", completionTokens.get());
+            map.put("estimatedCompletionTokens", estimatedCompletionTokens.get());
+            map.put("avgPromptTokens", measured == 0 ? 0 : promptTokens.get() / measured);
+            map.put("avgCompletionTokens", measured == 0 ? 0 : completionTokens.get() / measured);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.TtsCacheProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * TTS音频缓存服务
+ * 以 (文本, 发音人, 采样率, 格式, 语调, 语速) 的哈希为键缓存合成后的音频。
+ * 内存层使用堆外缓冲区，按LRU/LFU淘汰；磁盘层为内存映射的段文件，重启后可恢复。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TtsAudioCache {
+    private static final int RECORD_MAGIC = 0x54545331; // "TTS1"
+    private static final int RECORD_HEADER_SIZE = 14;   // magic(4) + keyLen(2) + dataLen(4) + crc(4)
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final TtsCacheProperties properties;
+
+    // 内存层，按访问顺序排列，便于LRU淘汰
+    private final LinkedHashMap<String, MemoryEntry> memoryTier = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    // 磁盘层索引：缓存键 -> 段文件内位置
+    private final Map<String, DiskEntry> diskIndex = new HashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private boolean diskAvailable;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public synchronized void init() {
+        if (!properties.isEnabled() || !properties.isDiskEnabled()) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(properties.getDiskPath());
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(dir)) {
+                files = stream.filter(TtsAudioCache::isSegmentFile).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = openSegment(file, parseSegmentId(file));
+                recoverSegment(segment);
+                segments.addLast(segment);
+            }
+            if (segments.isEmpty()) {
+                rollSegment();
+            }
+            diskAvailable = true;
+            log.info("TTS磁盘缓存初始化完成: 段文件 {} 个, 条目 {} 个", segments.size(), diskIndex.size());
+        } catch (IOException e) {
+            log.error("TTS磁盘缓存初始化失败，仅使用内存缓存: {}", e.getMessage(), e);
+            diskAvailable = false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        for (Segment segment : segments) {
+            closeSegment(segment);
+        }
+        segments.clear();
+        diskIndex.clear();
+        diskAvailable = false;
+    }
+
+    /**
+     * 计算缓存键
+     */
+    public static String buildKey(String text, String voice, int sampleRate, String format, int pitchRate, int speechRate) {
+        String raw = String.join("\u0001", text, voice, String.valueOf(sampleRate), format,
+                String.valueOf(pitchRate), String.valueOf(speechRate));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 查询缓存，未命中返回null
+     */
+    public synchronized byte[] get(String key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        MemoryEntry memoryEntry = memoryTier.get(key);
+        if (memoryEntry != null) {
+            memoryEntry.hits++;
+            byte[] audio = new byte[memoryEntry.length];
+            memoryEntry.buffer.duplicate().get(audio);
+            memoryHits.incrementAndGet();
+            bytesSaved.addAndGet(audio.length);
+            return audio;
+        }
+        DiskEntry diskEntry = diskAvailable ? diskIndex.get(key) : null;
+        if (diskEntry != null) {
+            byte[] audio = new byte[diskEntry.length];
+            ByteBuffer view = diskEntry.segment.buffer.duplicate();
+            view.position(diskEntry.offset);
+            view.get(audio);
+            putMemory(key, audio);
+            diskHits.incrementAndGet();
+            bytesSaved.addAndGet(audio.length);
+            return audio;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(String key, byte[] audio) {
+        if (!properties.isEnabled() || audio == null || audio.length == 0) {
+            return;
+        }
+        putMemory(key, audio);
+        if (diskAvailable && !diskIndex.containsKey(key)) {
+            try {
+                appendToDisk(key, audio);
+            } catch (IOException e) {
+                log.warn("TTS音频写入磁盘缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清空缓存（保留统计数据）
+     */
+    public synchronized void clear() {
+        memoryTier.clear();
+        memoryBytes = 0;
+        if (diskAvailable) {
+            while (!segments.isEmpty()) {
+                dropOldestSegment();
+            }
+            diskIndex.clear();
+            try {
+                rollSegment();
+            } catch (IOException e) {
+                log.error("重建TTS磁盘缓存段失败: {}", e.getMessage(), e);
+                diskAvailable = false;
+            }
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("evictionPolicy", properties.getEvictionPolicy().name());
+        stats.put("memoryEntries", memoryTier.size());
+        stats.put("memoryBytes", memoryBytes);
+        stats.put("diskEnabled", diskAvailable);
+        stats.put("diskEntries", diskIndex.size());
+        stats.put("diskSegments", segments.size());
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("bytesSaved", bytesSaved.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private void putMemory(String key, byte[] audio) {
+        if (audio.length > properties.getMemoryMaxBytes()) {
+            return;
+        }
+        MemoryEntry existing = memoryTier.remove(key);
+        if (existing != null) {
+            memoryBytes -= existing.length;
+        }
+        while (memoryBytes + audio.length > properties.getMemoryMaxBytes() && !memoryTier.isEmpty()) {
+            evictOne();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(audio.length);
+        buffer.put(audio).flip();
+        MemoryEntry entry = new MemoryEntry(buffer, audio.length);
+        if (existing != null) {
+            entry.hits = existing.hits;
+        }
+        memoryTier.put(key, entry);
+        memoryBytes += audio.length;
+    }
+
+    private void evictOne() {
+        Iterator<Map.Entry<String, MemoryEntry>> iterator = memoryTier.entrySet().iterator();
+        Map.Entry<String, MemoryEntry> victim = iterator.next();
+        if (properties.getEvictionPolicy() == TtsCacheProperties.EvictionPolicy.LFU) {
+            // 访问次数最少者优先淘汰，次数相同时淘汰最久未访问的
+            while (iterator.hasNext()) {
+                Map.Entry<String, MemoryEntry> candidate = iterator.next();
+                if (candidate.getValue().hits < victim.getValue().hits) {
+                    victim = candidate;
+                }
+            }
+        }
+        memoryTier.remove(victim.getKey());
+        memoryBytes -= victim.getValue().length;
+        evictions.incrementAndGet();
+    }
+
+    private void appendToDisk(String key, byte[] audio) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + keyBytes.length + audio.length;
+        Segment segment = segments.peekLast();
+        if (segment == null || recordSize > segment.buffer.capacity()) {
+            return;
+        }
+        if (segment.writePosition + recordSize > segment.buffer.capacity()) {
+            segment = rollSegment();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(audio);
+        ByteBuffer view = segment.buffer.duplicate();
+        view.position(segment.writePosition);
+        view.putInt(RECORD_MAGIC)
+                .putShort((short) keyBytes.length)
+                .putInt(audio.length)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(audio);
+        int dataOffset = segment.writePosition + RECORD_HEADER_SIZE + keyBytes.length;
+        diskIndex.put(key, new DiskEntry(segment, dataOffset, audio.length));
+        segment.writePosition += recordSize;
+    }
+
+    private Segment rollSegment() throws IOException {
+        Segment last = segments.peekLast();
+        if (last != null) {
+            last.buffer.force();
+        }
+        long nextId = last == null ? 1 : last.id + 1;
+        Path file = Paths.get(properties.getDiskPath(), String.format("%s%06d%s", SEGMENT_PREFIX, nextId, SEGMENT_SUFFIX));
+        Segment segment = openSegment(file, nextId);
+        segments.addLast(segment);
+        while (segments.size() > 1 && (long) segments.size() * properties.getSegmentSize() > properties.getDiskMaxBytes()) {
+            dropOldestSegment();
+        }
+        return segment;
+    }
+
+    private void dropOldestSegment() {
+        Segment oldest = segments.pollFirst();
+        if (oldest == null) {
+            return;
+        }
+        diskIndex.values().removeIf(entry -> entry.segment == oldest);
+        closeSegment(oldest);
+        try {
+            Files.deleteIfExists(oldest.path);
+        } catch (IOException e) {
+            log.warn("删除TTS缓存段文件失败: {}", oldest.path);
+        }
+        log.debug("淘汰TTS缓存段文件: {}", oldest.path);
+    }
+
+    private Segment openSegment(Path file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long capacity = Math.max(channel.size(), properties.getSegmentSize());
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new Segment(id, file, channel, buffer);
+    }
+
+    /**
+     * 扫描段文件重建索引，遇到不完整或校验失败的记录即停止
+     */
+    private void recoverSegment(Segment segment) {
+        ByteBuffer view = segment.buffer.duplicate();
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= view.capacity() && view.getInt(position) == RECORD_MAGIC) {
+            int keyLength = view.getShort(position + 4);
+            int dataLength = view.getInt(position + 6);
+            int checksum = view.getInt(position + 10);
+            int dataOffset = position + RECORD_HEADER_SIZE + keyLength;
+            if (keyLength <= 0 || dataLength <= 0 || (long) dataOffset + dataLength > view.capacity()) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            view.get(position + RECORD_HEADER_SIZE, keyBytes);
+            CRC32 crc = new CRC32();
+            crc.update(view.slice(dataOffset, dataLength));
+            if ((int) crc.getValue() != checksum) {
+                log.warn("TTS缓存段 {} 在偏移 {} 处校验失败，截断恢复", segment.path, position);
+                break;
+            }
+            diskIndex.put(new String(keyBytes, StandardCharsets.UTF_8), new DiskEntry(segment, dataOffset, dataLength));
+            position = dataOffset + dataLength;
+        }
+        segment.writePosition = position;
+    }
+
+    private void closeSegment(Segment segment) {
+        try {
+            segment.buffer.force();
+            segment.channel.close();
+        } catch (Exception e) {
+            log.warn("关闭TTS缓存段文件失败: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long parseSegmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 内存层条目（堆外缓冲区）
+     */
+    private static class MemoryEntry {
+        final ByteBuffer buffer;
+        final int length;
+        long hits;
+
+        MemoryEntry(ByteBuffer buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 磁盘层条目
+     */
+    private record DiskEntry(Segment segment, int offset, int length) {
+    }
+
+    /**
+     * 内存映射的段文件
+     */
+    private static class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writePosition;
+
+        Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.airoleplaying.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 渐进式语音聊天流水线
+ * 以SSE事件逐阶段推送结果：转录文本 -> AI回复增量 -> 按句合成的语音片段，
+ * 每个事件携带阶段耗时和总耗时，客户端可尽早开始渲染和播放。
+ * 语音按句在AI回复生成过程中并行合成，按句子顺序推送。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VoicePipelineService {
+    // 过短的句子与下一句合并，避免过多的合成请求
+    private static final int MIN_SENTENCE_CHARS = 6;
+
+    private final SpeechAiService speechAiService;
+    private final RolePlayChatService rolePlayChatService;
+    private final TokenBatcher tokenBatcher;
+    private final CharacterService characterService;
+
+    /**
+     * 执行语音聊天流水线
+     *
+     * @param file 录音文件
+     * @param characterId 角色ID
+     * @param conversationId 会话ID，为null时为无状态请求
+     * @param synthesizeAudio 是否合成语音回复
+     * @return SSE事件流：transcript、ai_delta、ai_complete、audio（单句合成失败时为audio_error）、done，出错时为error
+     */
+    public Flux<ServerSentEvent<Map<String, Object>>> process(MultipartFile file, String characterId,
+                                                              String conversationId, boolean synthesizeAudio) {
+        Pipeline pipeline = new Pipeline(characterId, conversationId, synthesizeAudio);
+        return pipeline.sink.asFlux()
+                .doOnSubscribe(subscription -> pipeline.start(file))
+                .doOnCancel(pipeline::cancel);
+    }
+
+    /**
+     * 单次请求的流水线状态
+     */
+    private class Pipeline {
+        final Sinks.Many<ServerSentEvent<Map<String, Object>>> sink = Sinks.many().unicast().onBackpressureBuffer();
+        final String characterId;
+        final String voice;
+        final String conversationId;
+        final boolean synthesizeAudio;
+        final long startTime = System.currentTimeMillis();
+        final StringBuilder fullText = new StringBuilder();
+        final StringBuilder sentence = new StringBuilder();
+        final AtomicInteger audioIndex = new AtomicInteger();
+        final AtomicReference<Disposable> transcription = new AtomicReference<>();
+        final AtomicReference<Disposable> aiStream = new AtomicReference<>();
+        // 按句子顺序串联的推送链，各句的合成并行进行
+        CompletableFuture<Void> audioChain = CompletableFuture.completedFuture(null);
+        long ttsStartTime;
+
+        Pipeline(String characterId, String conversationId, boolean synthesizeAudio) {
+            this.characterId = characterId;
+            this.voice = characterService.getCharacterProfile(characterId).getVoice();
+            this.conversationId = conversationId;
+            this.synthesizeAudio = synthesizeAudio;
+        }
+
+        void start(MultipartFile file) {
+            // 转录异步执行，请求取消时一并取消转录
+            transcription.set(Mono.fromFuture(speechAiService.speechToText(file))
+                    .subscribe(this::onTranscript, this::fail));
+        }
+
+        void cancel() {
+            Disposable pending = transcription.get();
+            if (pending != null) {
+                pending.dispose();
+            }
+            Disposable disposable = aiStream.get();
+            if (disposable != null) {
+                disposable.dispose();
+            }
+        }
+
+        private void onTranscript(String text) {
+            if (text == null || text.isBlank()) {
+                fail(new IllegalStateException("未能识别到有效语音内容"));
+                return;
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("text", text);
+            emit("transcript", data, startTime);
+
+            long aiStartTime = System.currentTimeMillis();
+            aiStream.set(tokenBatcher.batch(rolePlayChatService.stream(characterId, conversationId, text.trim(),
+                            ResponseChannel.VOICE))
+                    .subscribe(delta -> onDelta(delta, aiStartTime), this::fail, () -> onAiComplete(aiStartTime)));
+        }
+
+        private synchronized void onDelta(String delta, long aiStartTime) {
+            fullText.append(delta);
+            Map<String, Object> data = new HashMap<>();
+            data.put("delta", delta);
+            emit("ai_delta", data, aiStartTime);
+            if (synthesizeAudio) {
+                for (int i = 0; i < delta.length(); i++) {
+                    char c = delta.charAt(i);
+                    sentence.append(c);
+                    // 遇到句末时将缓冲的文本作为一句送去合成
+                    if (TextSegmenter.endsSentence(sentence) && sentence.toString().trim().length() >= MIN_SENTENCE_CHARS) {
+                        synthesizeSentence();
+                    }
+                }
+            }
+        }
+
+        private synchronized void onAiComplete(long aiStartTime) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("text", fullText.toString());
+            data.put("estimatedTokens", TokenEstimator.estimate(fullText));
+            emit("ai_complete", data, aiStartTime);
+            if (synthesizeAudio && !sentence.toString().isBlank()) {
+                synthesizeSentence();
+            }
+            audioChain.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+                Map<String, Object> done = new HashMap<>();
+                done.put("audioChunks", audioIndex.get());
+                emit("done", done, startTime);
+                sink.tryEmitComplete();
+            });
+        }
+
+        /**
+         * 立即开始合成当前句子，结果按句子顺序推送
+         */
+        private void synthesizeSentence() {
+            String text = sentence.toString().trim();
+            sentence.setLength(0);
+            if (!TextSegmenter.isSpeakable(text)) {
+                return;
+            }
+            if (ttsStartTime == 0) {
+                ttsStartTime = System.currentTimeMillis();
+            }
+            int index = audioIndex.getAndIncrement();
+            CompletableFuture<byte[]> audio = speechAiService.textToSpeech(text, voice);
+            // 单句合成失败不影响文本结果和其余语音片段
+            CompletableFuture<byte[]> settled = audio.handle((bytes, error) -> error == null ? bytes : null);
+            audioChain = audioChain.thenCombine(settled, (ignored, bytes) -> {
+                Map<String, Object> data = new HashMap<>();
+                data.put("index", index);
+                data.put("text", text);
+                if (bytes == null) {
+                    data.put("error", "语音合成失败");
+                    emit("audio_error", data, ttsStartTime);
+                    return null;
+                }
+                data.put("audio", Base64.getEncoder().encodeToString(bytes));
+                data.put("format", "wav");
+                emit("audio", data, ttsStartTime);
+                return null;
+            });
+        }
+
+        private void fail(Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.error("语音聊天流水线失败: {}", cause.getMessage(), cause);
+            Map<String, Object> data = new HashMap<>();
+            data.put("error", cause.getMessage());
+            emit("error", data, startTime);
+            sink.tryEmitComplete();
+        }
+
+        /**
+         * 推送事件，附带阶段耗时与总耗时；多个线程可能同时推送，需串行化
+         */
+        private void emit(String stage, Map<String, Object> data, long stageStartTime) {
+            long now = System.currentTimeMillis();
+            data.put("stage", stage);
+            data.put("stageMs", now - stageStartTime);
+            data.put("elapsedMs", now - startTime);
+            synchronized (sink) {
+                sink.tryEmitNext(ServerSentEvent.<Map<String, Object>>builder()
+                        .event(stage)
+                        .data(data)
+                        .build());
+            }
+        }
+    }
+}
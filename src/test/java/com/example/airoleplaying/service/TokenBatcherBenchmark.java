@@ -0,0 +1,113 @@
+package com.example.airoleplaying.service;
+
+import com.example.airoleplaying.config.StreamBatchingProperties;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * TokenBatcher 基准测试
+ * 多条合成的逐token流并发经过合并后写入计数输出流（每帧写一次并 flush，与流式接口一致），
+ * 对比不合并与合并时的写入次数、flush次数、写出字节数、耗时和进程CPU时间。
+ * 计数输出流不产生系统调用，CPU时间只反映合并本身的开销，真实连接上每次 flush 还有一次写系统调用。
+ * 独立运行：TokenBatcherBenchmark [流数=200] [每流token数=500] [token间隔毫秒=2]
+ */
+public class TokenBatcherBenchmark {
+    private static final String[] TOKENS = {"你好", "，", "很高兴", "认识", "你", "。", " Hello", " world", "!", "\n"};
+
+    public static void main(String[] args) {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int tokens = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        Duration gap = Duration.ofMillis(args.length > 2 ? Math.max(1, Long.parseLong(args[2])) : 2);
+
+        StreamBatchingProperties properties = new StreamBatchingProperties();
+        TokenBatcher batcher = new TokenBatcher(properties);
+        UnaryOperator<Flux<String>> direct = flux -> flux;
+        UnaryOperator<Flux<String>> batched = flux -> batcher.batch(flux, properties.getFlushInterval(),
+                properties.getMaxChars());
+
+        // 预热
+        run(Math.min(streams, 20), Math.min(tokens, 100), gap, direct);
+        run(Math.min(streams, 20), Math.min(tokens, 100), gap, batched);
+
+        System.out.printf("流数: %d, 每流token数: %d, token间隔: %d ms, flushInterval: %d ms, maxChars: %d%n",
+                streams, tokens, gap.toMillis(), properties.getFlushInterval().toMillis(), properties.getMaxChars());
+        report("不合并", run(streams, tokens, gap, direct));
+        report("合并", run(streams, tokens, gap, batched));
+    }
+
+    /**
+     * 并发运行全部流，等待写出完成
+     */
+    private static Result run(int streams, int tokens, Duration gap, UnaryOperator<Flux<String>> pipeline) {
+        CountingOutputStream out = new CountingOutputStream();
+        long cpuStart = processCpuTime();
+        long start = System.nanoTime();
+        Flux.range(0, streams)
+                .flatMap(i -> pipeline.apply(tokenStream(tokens, gap)).doOnNext(frame -> write(out, frame)), streams)
+                .blockLast();
+        return new Result(out.writes.sum(), out.flushes.sum(), out.bytes.sum(),
+                (System.nanoTime() - start) / 1_000_000, (processCpuTime() - cpuStart) / 1_000_000);
+    }
+
+    private static Flux<String> tokenStream(int tokens, Duration gap) {
+        return Flux.interval(gap)
+                .take(tokens)
+                .map(i -> TOKENS[(int) (i % TOKENS.length)]);
+    }
+
+    private static void write(OutputStream out, String frame) {
+        try {
+            out.write(frame.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    private static void report(String name, Result result) {
+        System.out.printf("%s: 写入 %d 次, flush %d 次, 字节 %d, 耗时 %d ms, CPU %d ms%n",
+                name, result.writes, result.flushes, result.bytes, result.elapsedMs, result.cpuMs);
+    }
+
+    /**
+     * 只计数不保存数据的输出流
+     */
+    private static class CountingOutputStream extends OutputStream {
+        final LongAdder writes = new LongAdder();
+        final LongAdder flushes = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        @Override
+        public void write(int b) {
+            writes.increment();
+            bytes.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.increment();
+            bytes.add(len);
+        }
+
+        @Override
+        public void flush() {
+            flushes.increment();
+        }
+    }
+
+    private record Result(long writes, long flushes, long bytes, long elapsedMs, long cpuMs) {
+    }
+}